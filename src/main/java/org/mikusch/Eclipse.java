@@ -3,6 +3,12 @@ package org.mikusch;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -11,18 +17,53 @@ import twitter4j.Twitter;
 import twitter4j.TwitterFactory;
 
 import javax.security.auth.login.LoginException;
-import java.util.EnumSet;
+import java.lang.management.ManagementFactory;
+import java.util.*;
 
 @SpringBootApplication
 public class Eclipse {
 
+    private static final Logger LOG = LoggerFactory.getLogger(Eclipse.class);
+
     public static void main(String[] args) {
         SpringApplication.run(Eclipse.class, args);
     }
 
     @Bean(name = "jda")
-    public JDA getJDA(@Value("${eclipse.discord.token}") String token) throws LoginException, InterruptedException {
-        return JDABuilder.create(token, EnumSet.allOf(GatewayIntent.class)).build().awaitReady();
+    public JDA getJDA(@Value("${eclipse.discord.token}") String token, @Value("${eclipse.discord.lean}") boolean lean, ListableBeanFactory beanFactory) throws LoginException, InterruptedException {
+        long start = System.currentTimeMillis();
+        var jda = (lean ? createLeanJDABuilder(token, beanFactory) : JDABuilder.create(token, EnumSet.allOf(GatewayIntent.class))).build().awaitReady();
+
+        // collect first so that the number reflects the live caches rather than garbage
+        var memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        var heap = memory.getHeapMemoryUsage();
+        LOG.info("JDA ready in {} ms ({} mode), {} guilds, {} cached users, {} MB heap used after a full GC",
+                System.currentTimeMillis() - start, lean ? "lean" : "full", jda.getGuildCache().size(), jda.getUserCache().size(), heap.getUsed() / (1024 * 1024));
+        return jda;
+    }
+
+    /**
+     * Creates a builder with only the intents, cache flags and member cache that the components declare with
+     * {@link GatewayRequirements}. The annotations are read from the bean definitions, so no component is created yet.
+     */
+    private static JDABuilder createLeanJDABuilder(String token, ListableBeanFactory beanFactory) {
+        Set<GatewayIntent> intents = EnumSet.noneOf(GatewayIntent.class);
+        Set<CacheFlag> cacheFlags = EnumSet.noneOf(CacheFlag.class);
+        Set<GatewayRequirements.MemberCache> memberCache = EnumSet.noneOf(GatewayRequirements.MemberCache.class);
+        for (String name : beanFactory.getBeanNamesForAnnotation(GatewayRequirements.class)) {
+            var requirements = Objects.requireNonNull(beanFactory.findAnnotationOnBean(name, GatewayRequirements.class));
+            intents.addAll(Arrays.asList(requirements.intents()));
+            cacheFlags.addAll(Arrays.asList(requirements.cacheFlags()));
+            memberCache.addAll(Arrays.asList(requirements.memberCache()));
+        }
+        LOG.info("Lean mode with intents {}, cache flags {} and member cache {}", intents, cacheFlags, memberCache);
+
+        var policies = memberCache.stream().map(GatewayRequirements.MemberCache::getPolicy).toList();
+        return JDABuilder.createLight(token, intents)
+                .enableCache(cacheFlags)
+                .setMemberCachePolicy(policies.isEmpty() ? MemberCachePolicy.NONE : MemberCachePolicy.any(policies.get(0), policies.subList(1, policies.size()).toArray(MemberCachePolicy[]::new)))
+                .setChunkingFilter(ChunkingFilter.NONE);
     }
 
     @Bean(name = "twitter")
@@ -0,0 +1,43 @@
+package org.mikusch;
+
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares what a component needs from the gateway. In lean mode JDA is built with only the union of the requirements
+ * of all components, see {@code eclipse.discord.lean}.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface GatewayRequirements {
+
+    GatewayIntent[] intents() default {};
+
+    CacheFlag[] cacheFlags() default {};
+
+    /**
+     * @return the members that need to be cached, members are never chunked in lean mode but cached once they are seen
+     */
+    MemberCache[] memberCache() default {};
+
+    enum MemberCache {
+        VOICE(MemberCachePolicy.VOICE),
+        ONLINE(MemberCachePolicy.ONLINE),
+        OWNER(MemberCachePolicy.OWNER),
+        ALL(MemberCachePolicy.ALL);
+
+        private final MemberCachePolicy policy;
+
+        MemberCache(MemberCachePolicy policy) {
+            this.policy = policy;
+        }
+
+        public MemberCachePolicy getPolicy() {
+            return policy;
+        }
+    }
+}
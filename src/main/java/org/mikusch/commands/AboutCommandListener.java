@@ -1,17 +1,15 @@
 package org.mikusch.commands;
 
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDAInfo;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.IMentionable;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.TeamMember;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.InteractionHook;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
 import org.apache.commons.lang3.time.DurationFormatUtils;
-import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -19,19 +17,16 @@ import java.lang.management.ManagementFactory;
 import java.util.stream.Collectors;
 
 @Component
-public class AboutCommandListener extends ListenerAdapter {
+public class AboutCommandListener {
 
     @Autowired
-    public AboutCommandListener(JDA jda) {
-        jda.addEventListener(this);
-        jda.upsertCommand(Commands.slash("about", "Tells you more about the bot")).queue();
+    public AboutCommandListener(SlashCommandRouter router) {
+        router.register("about", this::onAbout);
+        router.addCommand(Commands.slash("about", "Tells you more about the bot"));
     }
 
-    @Override
-    public void onSlashCommandInteraction(@NotNull SlashCommandInteractionEvent event) {
-        if (!event.getName().equals("about")) return;
-
-        event.deferReply().queue(hook -> event.getJDA().retrieveApplicationInfo().queue(info -> {
+    private void onAbout(SlashCommandInteractionEvent event, InteractionHook hook) {
+        event.getJDA().retrieveApplicationInfo().queue(info -> {
             String inviteUrl = event.getJDA().getInviteUrl(Permission.MESSAGE_ADD_REACTION, Permission.VIEW_CHANNEL, Permission.MESSAGE_SEND, Permission.MESSAGE_EMBED_LINKS, Permission.MESSAGE_ATTACH_FILES, Permission.MESSAGE_HISTORY, Permission.MESSAGE_EXT_EMOJI, Permission.NICKNAME_CHANGE);
             MessageEmbed embed = new EmbedBuilder()
                     .setThumbnail(info.getIconUrl())
@@ -45,6 +40,6 @@ public class AboutCommandListener extends ListenerAdapter {
                     .build();
 
             hook.editOriginalEmbeds(embed).queue();
-        }));
+        });
     }
 }
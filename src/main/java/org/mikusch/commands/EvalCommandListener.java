@@ -1,56 +1,60 @@
 package org.mikusch.commands;
 
-import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
-import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.InteractionHook;
 import net.dv8tion.jda.api.interactions.commands.DefaultMemberPermissions;
-import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
 import net.dv8tion.jda.api.utils.MarkdownUtil;
 import org.apache.commons.lang3.StringUtils;
-import org.jetbrains.annotations.NotNull;
+import org.mikusch.service.ScriptEvaluator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
 @Component
-public class EvalCommandListener extends ListenerAdapter {
+public class EvalCommandListener {
+
+    private final ScriptEvaluator scriptEvaluator;
 
     @Autowired
-    public EvalCommandListener(JDA jda) {
-        jda.addEventListener(this);
-        jda.upsertCommand(Commands.slash("eval", "Evaluates code")
-                        .setDefaultPermissions(DefaultMemberPermissions.DISABLED)
-                        .addOption(OptionType.STRING, "code", "The code to evaluate", true))
-                .queue();
+    public EvalCommandListener(ScriptEvaluator scriptEvaluator, SlashCommandRouter router) {
+        this.scriptEvaluator = scriptEvaluator;
+        router.register("eval", this::onEval);
+        router.addCommand(Commands.slash("eval", "Evaluates code")
+                .setDefaultPermissions(DefaultMemberPermissions.DISABLED)
+                .addOption(OptionType.STRING, "code", "The code to evaluate", true));
     }
 
-    @Override
-    public void onSlashCommandInteraction(@NotNull SlashCommandInteractionEvent event) {
-        if (!event.getName().equals("eval")) return;
-
-        event.deferReply().queue(hook -> {
-            if (event.getUser().getIdLong() != 177414298698645504L)
-                hook.editOriginal("This command is not available to you.").queue();
-
-            var binding = new Binding();
-            var shell = new GroovyShell(binding);
-            binding.setProperty("event", event);
-
-            Object result = null;
-            try {
-                OptionMapping code = event.getOption("code");
-                if (code != null) {
-                    result = shell.evaluate(code.getAsString());
-                }
-            } catch (Exception e) {
-                result = e.toString();
-            } finally {
-                // Max. 2000 characters with room for markdown
-                hook.editOriginal(MarkdownUtil.codeblock(StringUtils.abbreviate(String.valueOf(result), 1990))).queue();
+    private void onEval(SlashCommandInteractionEvent event, InteractionHook hook) {
+        if (event.getUser().getIdLong() != 177414298698645504L) {
+            hook.editOriginal("This command is not available to you.").queue();
+            return;
+        }
+
+        var code = event.getOption("code");
+        if (code == null) {
+            hook.editOriginal(MarkdownUtil.codeblock("null")).queue();
+            return;
+        }
+
+        scriptEvaluator.evaluate(code.getAsString(), Map.of("event", event)).whenComplete((evaluation, throwable) -> {
+            String result;
+            String timings;
+            if (throwable == null) {
+                result = String.valueOf(evaluation.value());
+                timings = String.format("Compiled in %d ms%s, executed in %d ms",
+                        TimeUnit.NANOSECONDS.toMillis(evaluation.compileNanos()), evaluation.cached() ? " (cached)" : "",
+                        TimeUnit.NANOSECONDS.toMillis(evaluation.executionNanos()));
+            } else {
+                result = (throwable instanceof CompletionException ? throwable.getCause() : throwable).toString();
+                timings = "Failed";
             }
+            // Max. 2000 characters with room for markdown and timings
+            hook.editOriginal(MarkdownUtil.codeblock(StringUtils.abbreviate(result, 1900)) + timings).queue();
         });
     }
 }
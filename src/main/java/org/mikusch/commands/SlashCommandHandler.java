@@ -0,0 +1,17 @@
+package org.mikusch.commands;
+
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+
+/**
+ * Handles a slash command registered with the {@link SlashCommandRouter}.
+ */
+@FunctionalInterface
+public interface SlashCommandHandler {
+
+    /**
+     * @param event the event
+     * @param hook  the hook of the already deferred reply
+     */
+    void handle(SlashCommandInteractionEvent event, InteractionHook hook);
+}
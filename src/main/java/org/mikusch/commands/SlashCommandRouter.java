@@ -0,0 +1,176 @@
+package org.mikusch.commands;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.requests.restaction.CommandListUpdateAction;
+import org.jetbrains.annotations.NotNull;
+import org.mikusch.service.DatabaseExecutor;
+import org.mikusch.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The only listener for slash commands, dispatches each command to its handler with a single map lookup.
+ * <p>
+ * Handlers are registered by command path, i.e. {@code name} or {@code name/subcommand}. A subcommand without a handler
+ * of its own is handled by the handler of its command. The reply is deferred before the handler is called, the time
+ * from receiving the event until Discord acknowledged that is recorded per command path.
+ * <p>
+ * Command definitions are collected as well and registered with Discord once all beans are created. Each scope, i.e.
+ * globally or a single guild, is only updated with one bulk request if the hash of its commands differs from the hash
+ * stored after the last successful update.
+ */
+@Component
+public class SlashCommandRouter extends ListenerAdapter implements SmartInitializingSingleton {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlashCommandRouter.class);
+    private static final long GLOBAL_SCOPE = 0;
+    private static final long STATS_INTERVAL_MINUTES = 10;
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();   // Map<Command Path, Route>
+    private final Map<Long, List<CommandData>> commands = new ConcurrentHashMap<>();  // Map<Guild ID or 0, Commands>
+    private final ScheduledExecutorService statsExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("command-stats").setDaemon(true).build());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseExecutor databaseExecutor;
+    private final JDA jda;
+
+    @Autowired
+    public SlashCommandRouter(JdbcTemplate jdbcTemplate, DatabaseExecutor databaseExecutor, JDA jda) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.databaseExecutor = databaseExecutor;
+        this.jda = jda;
+        jda.addEventListener(this);
+        statsExecutor.scheduleAtFixedRate(() -> {
+            try {
+                getLatencies().forEach((path, latencies) -> {
+                    if (latencies.getCount() > 0) {
+                        LOG.info("/{}: {}", path, latencies);
+                    }
+                });
+            } catch (Exception e) {
+                LOG.error("Failed to log command latencies", e);
+            }
+        }, STATS_INTERVAL_MINUTES, STATS_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param command a command that is available everywhere
+     */
+    public void addCommand(@Nonnull CommandData command) {
+        addGuildCommand(GLOBAL_SCOPE, command);
+    }
+
+    /**
+     * @param guildId the ID of the only guild the command is available in
+     * @param command the command
+     */
+    public void addGuildCommand(long guildId, @Nonnull CommandData command) {
+        commands.computeIfAbsent(guildId, scope -> new CopyOnWriteArrayList<>()).add(command);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        Map<Long, String> storedHashes = new HashMap<>();
+        jdbcTemplate.query("SELECT `scope_id`, `hash` FROM `command_hashes`", (RowCallbackHandler) rs -> storedHashes.put(rs.getLong("scope_id"), rs.getString("hash")));
+
+        commands.forEach((scope, scopeCommands) -> {
+            List<CommandData> sorted = new ArrayList<>(scopeCommands);
+            sorted.sort(Comparator.comparing(CommandData::getName));
+
+            var hasher = Hashing.sha256().newHasher();
+            sorted.forEach(command -> hasher.putBytes(command.toData().toJson()));
+            String hash = hasher.hash().toString();
+            if (hash.equals(storedHashes.get(scope))) {
+                LOG.debug("Commands of scope {} are up to date", scope);
+                return;
+            }
+
+            CommandListUpdateAction update;
+            if (scope == GLOBAL_SCOPE) {
+                update = jda.updateCommands();
+            } else {
+                var guild = jda.getGuildById(scope);
+                if (guild == null) {
+                    LOG.warn("Cannot register commands for unknown guild {}", scope);
+                    return;
+                }
+                update = guild.updateCommands();
+            }
+
+            // executor keys must not be 0, the global scope is keyed by the bot itself
+            long key = scope == GLOBAL_SCOPE ? jda.getSelfUser().getIdLong() : scope;
+            update.addCommands(sorted).queue(registered -> {
+                LOG.info("Registered {} commands for scope {}", registered.size(), scope);
+                databaseExecutor.execute("command-hash", key, () ->
+                        jdbcTemplate.update("INSERT INTO `command_hashes` (`scope_id`, `hash`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `hash` = VALUES(`hash`)", scope, hash)
+                );
+            }, throwable -> LOG.error("Failed to register commands for scope {}", scope, throwable));
+        });
+    }
+
+    /**
+     * @param path    the command path, {@code name} or {@code name/subcommand}
+     * @param handler the handler
+     */
+    public void register(@Nonnull String path, @Nonnull SlashCommandHandler handler) {
+        if (routes.putIfAbsent(path, new Route(handler, new LatencyHistogram())) != null) {
+            throw new IllegalStateException("A handler for /" + path + " is already registered");
+        }
+    }
+
+    @Override
+    public void onSlashCommandInteraction(@NotNull SlashCommandInteractionEvent event) {
+        long receivedNanos = System.nanoTime();
+        var route = routes.get(event.getCommandPath());
+        if (route == null) {
+            route = routes.get(event.getName());
+            if (route == null) {
+                LOG.warn("No handler registered for /{}", event.getCommandPath());
+                return;
+            }
+        }
+
+        var handler = route.handler();
+        var latencies = route.latencies();
+        event.deferReply().queue(hook -> {
+            latencies.record(System.nanoTime() - receivedNanos);
+            try {
+                handler.handle(event, hook);
+            } catch (Exception e) {
+                LOG.error("Failed to handle /{}", event.getCommandPath(), e);
+            }
+        }, throwable -> LOG.error("Failed to acknowledge /{}", event.getCommandPath(), throwable));
+    }
+
+    /**
+     * @return the latencies from receiving a command until its reply was deferred, by command path
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+        routes.forEach((path, route) -> latencies.put(path, route.latencies()));
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        statsExecutor.shutdownNow();
+    }
+
+    private record Route(SlashCommandHandler handler, LatencyHistogram latencies) {
+    }
+}
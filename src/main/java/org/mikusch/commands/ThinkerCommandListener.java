@@ -1,16 +1,15 @@
 package org.mikusch.commands;
 
-import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.GuildMessageChannel;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.InteractionHook;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
 import net.dv8tion.jda.api.utils.MarkdownUtil;
-import org.apache.commons.lang3.StringUtils;
-import org.jetbrains.annotations.NotNull;
 import org.mikusch.service.ThinkerService;
+import org.mikusch.service.ThoughtScanner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,65 +18,74 @@ import org.springframework.stereotype.Component;
 import java.util.Objects;
 
 @Component
-public class ThinkerCommandListener extends ListenerAdapter {
+public class ThinkerCommandListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(ThinkerCommandListener.class);
 
     private final ThinkerService thinkerService;
+    private final ThoughtScanner thoughtScanner;
 
     @Autowired
-    public ThinkerCommandListener(ThinkerService thinkerService, JDA jda) {
+    public ThinkerCommandListener(ThinkerService thinkerService, ThoughtScanner thoughtScanner, SlashCommandRouter router) {
         this.thinkerService = thinkerService;
-        jda.addEventListener(this);
-        jda.upsertCommand(
+        this.thoughtScanner = thoughtScanner;
+        router.register("thinker/force", this::onForce);
+        router.register("thinker/scan", this::onScan);
+        router.addCommand(
                 Commands.slash("thinker", "The Thinker").addSubcommands(
                         new SubcommandData("force", "Forces the Thinker to think"),
                         new SubcommandData("scan", "Scans all messages in a channel and stores them in the database")
                                 .addOption(OptionType.CHANNEL, "channel", "The channel to scan in")
                 )
-        ).queue();
+        );
     }
 
-    @Override
-    public void onSlashCommandInteraction(@NotNull SlashCommandInteractionEvent event) {
-        if (!event.getName().equals("thinker")) return;
-
+    private static boolean checkPermission(SlashCommandInteractionEvent event, InteractionHook hook) {
         var member = Objects.requireNonNull(event.getMember());
+        if (!member.hasPermission(Permission.MANAGE_WEBHOOKS)) {
+            hook.editOriginal("You need the " + MarkdownUtil.bold(Permission.MANAGE_WEBHOOKS.getName()) + " permission in this server to use this command.").queue();
+            return false;
+        }
+        return true;
+    }
+
+    private void onForce(SlashCommandInteractionEvent event, InteractionHook hook) {
+        if (!checkPermission(event, hook)) return;
+
+        thinkerService.triggerThinker(event.getGuild(), true).thenAccept(readonlyMessage -> {
+            if (readonlyMessage.getChannelId() == event.getChannel().getIdLong()) {
+                hook.deleteOriginal().queue();
+            } else {
+                hook.editOriginal("The Thinker has spoken in " + event.getGuild().getTextChannelById(readonlyMessage.getChannelId()).getAsMention() + ".").queue();
+            }
+        }).exceptionally(e -> {
+            LOG.error("Failed to trigger Thinker", e);
 
-        event.deferReply().queue(hook -> {
-            if (member.hasPermission(Permission.MANAGE_WEBHOOKS)) {
-                if (StringUtils.equals(event.getSubcommandName(), "force")) {
-                    thinkerService.triggerThinker(event.getGuild(), true).thenAccept(readonlyMessage -> {
-                        if (readonlyMessage.getChannelId() == event.getChannel().getIdLong()) {
-                            hook.deleteOriginal().queue();
-                        } else {
-                            hook.editOriginal("The Thinker has spoken in " + event.getGuild().getTextChannelById(readonlyMessage.getChannelId()).getAsMention() + ".").queue();
-                        }
-                    }).exceptionally(e -> {
-                        LOG.error("Failed to trigger Thinker", e);
+            hook.editOriginal("The Thinker is currently asleep (an internal error has occurred).").queue();
+            return null;
+        });
+    }
+
+    private void onScan(SlashCommandInteractionEvent event, InteractionHook hook) {
+        if (!checkPermission(event, hook)) return;
 
-                        hook.editOriginal("The Thinker is currently asleep (an internal error has occurred).").queue();
-                        return null;
-                    });
-                } else if (StringUtils.equals(event.getSubcommandName(), "scan")) {
-                    var channelOption = event.getOption("channel");
-                    if (channelOption != null) {
-                        var channel = channelOption.getAsChannel();
-                        if (channel.getType().isMessage()) {
-                            hook.editOriginal("Scanning " + channelOption.getAsChannel().getAsMention() + " for messages...").queue(message -> {
-                                thinkerService.saveAllMessagesInChannel(channel.asTextChannel());
-                            });
-                        } else {
-                            hook.editOriginal(channelOption.getAsChannel().getAsMention() + " is not a message channel!").queue();
-                        }
-                    } else {
-                        hook.editOriginal("Scanning this channel for messages...").queue(message -> {
-                            thinkerService.saveAllMessagesInChannel(event.getChannel().asTextChannel());
-                        });
-                    }
-                }
+        var channelOption = event.getOption("channel");
+        if (channelOption != null) {
+            var channel = channelOption.getAsChannel();
+            if (channel.getType().isMessage()) {
+                scan(hook, channel.asGuildMessageChannel());
             } else {
-                hook.editOriginal("You need the " + MarkdownUtil.bold(Permission.MANAGE_WEBHOOKS.getName()) + " permission in this server to use this command.").queue();
+                hook.editOriginal(channelOption.getAsChannel().getAsMention() + " is not a message channel!").queue();
+            }
+        } else {
+            scan(hook, event.getChannel().asGuildMessageChannel());
+        }
+    }
+
+    private void scan(InteractionHook hook, GuildMessageChannel channel) {
+        hook.editOriginal("Scanning " + channel.getAsMention() + " for messages...").queue(message -> {
+            if (!thoughtScanner.scan(channel, hook)) {
+                hook.editOriginal(channel.getAsMention() + " is already being scanned!").queue();
             }
         });
     }
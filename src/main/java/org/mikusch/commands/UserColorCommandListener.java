@@ -2,6 +2,7 @@ package org.mikusch.commands;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
@@ -13,8 +14,11 @@ import net.dv8tion.jda.api.interactions.InteractionHook;
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.utils.MarkdownUtil;
 import org.jetbrains.annotations.NotNull;
+import org.mikusch.GatewayRequirements;
+import org.mikusch.service.DatabaseExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -22,57 +26,66 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Nonnull;
 import java.awt.*;
+import java.util.Objects;
 import java.util.Optional;
 
 import static net.dv8tion.jda.api.utils.MarkdownUtil.monospace;
 
 @Component
+@GatewayRequirements(intents = GatewayIntent.GUILD_MEMBERS)
 public class UserColorCommandListener extends ListenerAdapter {
 
     private final JdbcTemplate jdbcTemplate;
+    private final DatabaseExecutor databaseExecutor;
 
     @Autowired
-    public UserColorCommandListener(JdbcTemplate jdbcTemplate, JDA jda) {
+    public UserColorCommandListener(JdbcTemplate jdbcTemplate, DatabaseExecutor databaseExecutor, SlashCommandRouter router, JDA jda) {
         this.jdbcTemplate = jdbcTemplate;
+        this.databaseExecutor = databaseExecutor;
 
         jda.addEventListener(this);
+        router.register("usercolor", this::onUserColor);
         // Only add this command for Banana Land
-        var guild = jda.getGuildById(186809082470989824L);
-        if (guild != null) {
-            guild.upsertCommand(
-                    Commands.slash("usercolor", "Updates your colored role")
-                            .addOption(OptionType.STRING, "color", "The color")
-            ).queue();
-        }
+        router.addGuildCommand(186809082470989824L,
+                Commands.slash("usercolor", "Updates your colored role")
+                        .addOption(OptionType.STRING, "color", "The color")
+        );
     }
 
     private static String formatHex(@Nonnull final Color color) {
         return String.format("#%02x%02x%02x", color.getRed(), color.getGreen(), color.getBlue());
     }
 
-    @Override
-    public void onSlashCommandInteraction(@NotNull SlashCommandInteractionEvent event) {
-        if (!event.getName().equals("usercolor")) return;
-
-        event.deferReply().queue(hook -> {
+    private void onUserColor(SlashCommandInteractionEvent event, InteractionHook hook) {
+        var member = Objects.requireNonNull(event.getMember());
+        databaseExecutor.execute("usercolor-command", member.getGuild().getIdLong(), () -> {
             OptionMapping optionColor = event.getOption("color");
             if (optionColor == null) {
-                displayCurrentRoleColor(hook, event.getMember());
+                displayCurrentRoleColor(hook, member);
             } else {
                 var optionColorString = optionColor.getAsString();
                 try {
                     var color = Color.decode(optionColorString.startsWith("#") ? optionColorString : "#" + optionColorString);
-                    createOrUpdateRole(hook, event.getMember(), color);
+                    createOrUpdateRole(hook, member, color);
                 } catch (NumberFormatException e) {
                     hook.editOriginal("Invalid color string: " + MarkdownUtil.monospace(optionColorString)).queue();
                 }
             }
+        }).exceptionally(throwable -> {
+            hook.editOriginal("Your custom role could not be updated, please try again later.").queue();
+            return null;
         });
     }
 
+    /**
+     * Renames the usercolor role of a user who changed their name. In lean mode this only fires for users that are
+     * cached anyway, members aren't cached for this listener's sake.
+     *
+     * @param event the event
+     */
     @Override
     public void onUserUpdateName(@Nonnull UserUpdateNameEvent event) {
-        jdbcTemplate.query("SELECT `role_id` FROM `usercolors` WHERE `user_id` = ?",
+        databaseExecutor.execute("usercolor-rename", event.getUser().getIdLong(), () -> jdbcTemplate.query("SELECT `role_id` FROM `usercolors` WHERE `user_id` = ?",
                 rs -> {
                     var role = event.getJDA().getRoleById(rs.getLong("role_id"));
                     if (role != null) {
@@ -80,7 +93,7 @@ public class UserColorCommandListener extends ListenerAdapter {
                     }
                 },
                 event.getUser().getIdLong()
-        );
+        ));
     }
 
     /**
@@ -90,10 +103,12 @@ public class UserColorCommandListener extends ListenerAdapter {
      */
     @Override
     public void onGuildMemberRemove(@Nonnull GuildMemberRemoveEvent event) {
-        var member = event.getMember();
-        if (member != null) {
-            getRoleForMember(member).ifPresent(role -> role.delete().reason("User left guild").queue());
-        }
+        // the member is usually not cached, the user is always part of the event
+        var guild = event.getGuild();
+        long userId = event.getUser().getIdLong();
+        databaseExecutor.execute("usercolor-member-remove", guild.getIdLong(), () ->
+                getRoleForUser(guild, userId).ifPresent(role -> role.delete().reason("User left guild").queue())
+        );
     }
 
     /**
@@ -103,7 +118,9 @@ public class UserColorCommandListener extends ListenerAdapter {
      */
     @Override
     public void onRoleDelete(@NotNull RoleDeleteEvent event) {
-        jdbcTemplate.update("DELETE FROM `usercolors` WHERE `role_id` = ?", event.getRole().getIdLong());
+        databaseExecutor.execute("usercolor-role-delete", event.getGuild().getIdLong(), () ->
+                jdbcTemplate.update("DELETE FROM `usercolors` WHERE `role_id` = ?", event.getRole().getIdLong())
+        );
     }
 
     private void displayCurrentRoleColor(InteractionHook hook, Member member) {
@@ -132,11 +149,15 @@ public class UserColorCommandListener extends ListenerAdapter {
     }
 
     private Optional<Role> getRoleForMember(Member member) {
+        return getRoleForUser(member.getGuild(), member.getIdLong());
+    }
+
+    private Optional<Role> getRoleForUser(Guild guild, long userId) {
         try {
             var role = jdbcTemplate.queryForObject(
                     "SELECT `role_id` FROM `usercolors` WHERE `guild_id` = ? AND `user_id` = ?",
-                    (rs, rowNum) -> member.getGuild().getRoleById(rs.getLong("role_id")),
-                    member.getGuild().getIdLong(), member.getIdLong()
+                    (rs, rowNum) -> guild.getRoleById(rs.getLong("role_id")),
+                    guild.getIdLong(), userId
             );
             return Optional.ofNullable(role);
         } catch (EmptyResultDataAccessException e) {
@@ -154,7 +175,9 @@ public class UserColorCommandListener extends ListenerAdapter {
                     .setColor(color)
                     .setPermissions(Permission.EMPTY_PERMISSIONS)
                     .queue(role -> {
-                        jdbcTemplate.update("INSERT INTO `usercolors` (`user_id`, `guild_id`, `role_id`) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE `role_id` = ?", member.getIdLong(), guild.getIdLong(), role.getIdLong(), role.getIdLong());
+                        databaseExecutor.execute("usercolor-create", guild.getIdLong(), () ->
+                                jdbcTemplate.update("INSERT INTO `usercolors` (`user_id`, `guild_id`, `role_id`) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE `role_id` = ?", member.getIdLong(), guild.getIdLong(), role.getIdLong(), role.getIdLong())
+                        );
                         guild.addRoleToMember(member, role).queue();
                         guild.modifyRolePositions().selectPosition(role).moveTo(markerRole.getPosition() - 1).queue();
                         hook.editOriginal("A new custom role (" + role.getAsMention() + ") with the color " + monospace(formatHex(color)) + " has been successfully created and assigned to you.").queue();
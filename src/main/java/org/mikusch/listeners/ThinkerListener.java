@@ -2,17 +2,24 @@ package org.mikusch.listeners;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.events.channel.ChannelDeleteEvent;
+import net.dv8tion.jda.api.events.channel.update.ChannelUpdateParentEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.guild.override.GenericPermissionOverrideEvent;
 import net.dv8tion.jda.api.events.message.MessageBulkDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.message.MessageUpdateEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.utils.MiscUtil;
 import org.jetbrains.annotations.NotNull;
+import org.mikusch.GatewayRequirements;
 import org.mikusch.service.ThinkerService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 @Component
+@GatewayRequirements(intents = {GatewayIntent.GUILD_MESSAGES, GatewayIntent.MESSAGE_CONTENT})
 public class ThinkerListener extends ListenerAdapter {
 
     private final ThinkerService thinkerService;
@@ -27,32 +34,55 @@ public class ThinkerListener extends ListenerAdapter {
     public void onMessageReceived(@NotNull MessageReceivedEvent event) {
         if (event.isFromGuild()) {
             var message = event.getMessage();
-            if (thinkerService.isValidMessage(message)) {
-                thinkerService.getThinker(event.getGuild()).thenAccept(webhook -> {
-                    if (webhook != null) {
-                        thinkerService.saveMessage(message);
-                    }
-                });
+            if (thinkerService.hasThinker(event.getGuild()) && thinkerService.isValidMessage(message)) {
+                thinkerService.recordMessage(message);
+                thinkerService.saveMessage(message);
             }
         }
     }
 
+    @Override
+    public void onMessageUpdate(@NotNull MessageUpdateEvent event) {
+        if (event.isFromGuild()) {
+            thinkerService.updateMessage(event.getMessage());
+        }
+    }
+
     @Override
     public void onMessageDelete(@NotNull MessageDeleteEvent event) {
         if (event.isFromGuild()) {
-            thinkerService.deleteMessage(event.getMessageIdLong());
+            thinkerService.deleteMessage(event.getGuild().getIdLong(), event.getMessageIdLong());
         }
     }
 
     @Override
     public void onMessageBulkDelete(@NotNull MessageBulkDeleteEvent event) {
-        thinkerService.deleteMessages(event.getMessageIds().stream().map(MiscUtil::parseSnowflake).toList());
+        thinkerService.deleteMessages(event.getGuild().getIdLong(), event.getMessageIds().stream().map(MiscUtil::parseSnowflake).toList());
+    }
+
+    @Override
+    public void onGenericPermissionOverride(@NotNull GenericPermissionOverrideEvent event) {
+        thinkerService.invalidateChannelEligibility(event.getGuild());
+    }
+
+    @Override
+    public void onChannelUpdateParent(@NotNull ChannelUpdateParentEvent event) {
+        thinkerService.invalidateChannelEligibility(event.getGuild());
+    }
+
+    @Override
+    public void onGuildLeave(@NotNull GuildLeaveEvent event) {
+        thinkerService.invalidateChannelEligibility(event.getGuild());
     }
 
     @Override
     public void onChannelDelete(@NotNull ChannelDeleteEvent event) {
+        if (event.isFromGuild()) {
+            thinkerService.invalidateChannelEligibility(event.getGuild());
+        }
         if (event.getChannelType().isMessage()) {
             thinkerService.deleteAllMessagesFromChannel(event.getChannel());
+            thinkerService.invalidateThinkerWebhooks(event.getChannel());
         }
     }
 }
@@ -0,0 +1,121 @@
+package org.mikusch.service;
+
+import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.entities.Member;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * Incrementally maintained count of the activities of all members in an auto channel.
+ * <p>
+ * Every member delta updates the counts and the top {@value #TOP_SIZE} activities right away, so reading them
+ * costs nothing. Ties are broken by which activity showed up first, which keeps channel names stable.
+ */
+final class ActivityHistogram {
+
+    static final int TOP_SIZE = 3;
+
+    private final Map<Long, Set<String>> memberActivities = new HashMap<>();   // Map<Member ID, Activity Names>
+    private final Map<String, Integer> counts = new LinkedHashMap<>();   // Map<Activity Name, Count>
+    private volatile List<String> top = List.of();
+    private volatile int version;
+
+    /**
+     * Collects the activity names that count towards the histogram for a member.
+     *
+     * @param member the member
+     * @return the activity names, empty for bots
+     */
+    @Nonnull
+    static Set<String> activityNamesOf(@Nonnull Member member) {
+        if (member.getUser().isBot()) {
+            return Set.of();
+        }
+
+        Set<String> names = new HashSet<>();
+        for (Activity activity : member.getActivities()) {
+            if (activity.getType() != Activity.ActivityType.CUSTOM_STATUS) {
+                names.add(activity.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Adds a member or replaces their previous activities.
+     *
+     * @param member the member
+     */
+    synchronized void put(@Nonnull Member member) {
+        var names = activityNamesOf(member);
+        var previous = names.isEmpty() ? memberActivities.remove(member.getIdLong()) : memberActivities.put(member.getIdLong(), names);
+        if (!Objects.equals(previous, names)) {
+            if (previous != null) {
+                previous.forEach(this::decrement);
+            }
+            names.forEach(name -> counts.merge(name, 1, Integer::sum));
+            updateTop();
+        }
+    }
+
+    /**
+     * Removes a member and their activities.
+     *
+     * @param memberId the member ID
+     */
+    synchronized void remove(long memberId) {
+        var previous = memberActivities.remove(memberId);
+        if (previous != null && !previous.isEmpty()) {
+            previous.forEach(this::decrement);
+            updateTop();
+        }
+    }
+
+    /**
+     * @return the most common activity names, most common first
+     */
+    @Nonnull
+    List<String> getTop() {
+        return top;
+    }
+
+    /**
+     * @return a number that changes whenever {@link #getTop()} changes
+     */
+    int getVersion() {
+        return version;
+    }
+
+    private void decrement(String name) {
+        counts.computeIfPresent(name, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void updateTop() {
+        // single pass selection, the histogram only ever holds a handful of activities
+        String[] names = new String[TOP_SIZE];
+        int[] values = new int[TOP_SIZE];
+        int size = 0;
+        for (var entry : counts.entrySet()) {
+            int count = entry.getValue();
+            int i = size;
+            while (i > 0 && values[i - 1] < count) {
+                i--;
+            }
+            if (i < TOP_SIZE) {
+                int end = Math.min(size, TOP_SIZE - 1);
+                System.arraycopy(names, i, names, i + 1, end - i);
+                System.arraycopy(values, i, values, i + 1, end - i);
+                names[i] = entry.getKey();
+                values[i] = count;
+                size = Math.min(size + 1, TOP_SIZE);
+            }
+        }
+
+        var updated = List.of(Arrays.copyOf(names, size));
+        if (!updated.equals(top)) {
+            top = updated;
+            version++;
+        }
+    }
+}
@@ -1,55 +1,221 @@
 package org.mikusch.service;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
+import net.dv8tion.jda.api.events.GenericEvent;
 import net.dv8tion.jda.api.events.channel.ChannelDeleteEvent;
+import net.dv8tion.jda.api.events.channel.GenericChannelEvent;
 import net.dv8tion.jda.api.events.channel.update.ChannelUpdateBitrateEvent;
 import net.dv8tion.jda.api.events.channel.update.ChannelUpdateNameEvent;
 import net.dv8tion.jda.api.events.channel.update.ChannelUpdateParentEvent;
 import net.dv8tion.jda.api.events.channel.update.ChannelUpdateUserLimitEvent;
+import net.dv8tion.jda.api.events.guild.GenericGuildEvent;
 import net.dv8tion.jda.api.events.guild.override.PermissionOverrideUpdateEvent;
 import net.dv8tion.jda.api.events.guild.voice.GuildVoiceJoinEvent;
 import net.dv8tion.jda.api.events.guild.voice.GuildVoiceLeaveEvent;
 import net.dv8tion.jda.api.events.guild.voice.GuildVoiceMoveEvent;
 import net.dv8tion.jda.api.events.user.update.GenericUserPresenceEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.mikusch.GatewayRequirements;
+import org.mikusch.util.ConcurrentLongMap;
+import org.mikusch.util.KeyedSerialExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Stream;
 
 @Component
+@GatewayRequirements(
+        intents = {GatewayIntent.GUILD_VOICE_STATES, GatewayIntent.GUILD_PRESENCES},
+        cacheFlags = {CacheFlag.VOICE_STATE, CacheFlag.ACTIVITY, CacheFlag.MEMBER_OVERRIDES},
+        memberCache = GatewayRequirements.MemberCache.VOICE
+)
 public class AutoChannel extends ListenerAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(AutoChannel.class);
     private static final EnumSet<Permission> CHANNEL_AUTHOR_PERMISSIONS_ALLOW = EnumSet.of(
             Permission.MANAGE_CHANNEL, Permission.PRIORITY_SPEAKER, Permission.VOICE_SPEAK,
             Permission.VOICE_MOVE_OTHERS, Permission.VOICE_USE_VAD, Permission.VOICE_STREAM
     );
     private static final EnumSet<Permission> CHANNEL_AUTHOR_PERMISSIONS_DENY = EnumSet.noneOf(Permission.class);
+    private static final long ROOT_SYNC_DELAY_MILLIS = 2000;
+    private static final long STATS_INTERVAL_MINUTES = 10;
 
-    private final ListMultimap<Long, Long> activeChannels = Multimaps.synchronizedListMultimap(ArrayListMultimap.create()); // ListMultimap<Guild ID, Voice Channel ID>
-    private final Map<Long, Long> channelAuthors = new ConcurrentHashMap<>();   // Map<Voice Channel ID, User ID>
-    private final List<Long> customRenamedChannels = Collections.synchronizedList(new ArrayList<>());   // List<Voice Channel ID>
+    private final ConcurrentLongMap<AutoChannelState> autoChannels = new ConcurrentLongMap<>();  // Map<Voice Channel ID, State>
+    private final ConcurrentLongMap<long[]> guildAutoChannels = new ConcurrentLongMap<>();    // Map<Guild ID, Voice Channel IDs ordered by ordinal>
+    private final ConcurrentLongMap<PendingRootSync> pendingRootSyncs = new ConcurrentLongMap<>();  // Map<Guild ID, Changes>
+    private final ConcurrentLongMap<long[]> autoChannelMembers = new ConcurrentLongMap<>();   // Map<User ID, Guild IDs the user is in an auto channel in>
+    private final LongAdder presenceEventsFiltered = new LongAdder();
+    private final LongAdder presenceEventsProcessed = new LongAdder();
+    private final ScheduledExecutorService statsExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("autochannel-stats").setDaemon(true).build());
+    // all state of a guild is only ever modified on that guild's executor
+    private final KeyedSerialExecutor guildExecutor = new KeyedSerialExecutor(Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            new ThreadFactoryBuilder().setNameFormat("autochannel-%d").build()
+    ));
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor();
 
-    private final JdbcTemplate jdbcTemplate;
+    private final AutoChannelConfigCache configCache;
+    private final AutoChannelStateStore stateStore;
+    private final ChannelRenameScheduler renameScheduler;
 
     @Autowired
-    public AutoChannel(JdbcTemplate jdbcTemplate, JDA jda) {
-        this.jdbcTemplate = jdbcTemplate;
-        jda.addEventListener(this);
+    public AutoChannel(AutoChannelConfigCache configCache, AutoChannelStateStore stateStore, ChannelRenameScheduler renameScheduler, JDA jda) {
+        this.configCache = configCache;
+        this.stateStore = stateStore;
+        this.renameScheduler = renameScheduler;
+        this.restoreAutoChannels(jda);
+        jda.addEventListener((EventListener) this::dispatch);
+        statsExecutor.scheduleAtFixedRate(() -> {
+            try {
+                LOG.info("{} presence events filtered, {} processed", getPresenceEventsFiltered(), getPresenceEventsProcessed());
+            } catch (Exception e) {
+                LOG.error("Failed to log presence statistics", e);
+            }
+        }, STATS_INTERVAL_MINUTES, STATS_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Reconciles the auto channels persisted before the last shutdown with the JDA cache.
+     * Leftover channels that are now empty get deleted, all others are adopted again.
+     *
+     * @param jda the JDA instance, which must be ready
+     */
+    private void restoreAutoChannels(JDA jda) {
+        int adopted = 0, deleted = 0;
+        for (var persisted : stateStore.loadAll()) {
+            var vc = jda.getVoiceChannelById(persisted.channelId);
+            if (vc == null) {
+                // the channel was deleted while we were offline
+                stateStore.markRemoved(persisted.channelId);
+            } else if (vc.getMembers().isEmpty()) {
+                stateStore.markRemoved(persisted.channelId);
+                vc.delete().reason("Every member has left the auto-channel").queue();
+                deleted++;
+            } else {
+                var state = this.addAutoChannel(persisted.guildId, persisted.channelId, persisted.ownerId);
+                state.renamed = persisted.renamed;
+                vc.getMembers().forEach(member -> {
+                    state.activities.put(member);
+                    this.trackMember(persisted.guildId, member.getIdLong());
+                });
+                if (vc.getMembers().stream().noneMatch(member -> member.getIdLong() == persisted.ownerId)) {
+                    // the owner left while we were offline
+                    this.transferOwnership(vc, state, persisted.ownerId, "<@" + persisted.ownerId + ">");
+                }
+                adopted++;
+            }
+        }
+
+        // ordinals may have shifted because of deleted channels
+        autoChannels.forEach((channelId, state) -> {
+            var vc = jda.getVoiceChannelById(channelId);
+            if (vc != null && !state.renamed) {
+                renameScheduler.rename(vc, this.createChannelNameFromConnectedMembers(vc));
+            }
+        });
+        LOG.info("Restored {} auto channels and deleted {} empty leftovers", adopted, deleted);
+    }
+
+    /**
+     * Filters events before they are dispatched to the {@link ListenerAdapter} methods.
+     *
+     * @param event the event
+     */
+    private void dispatch(@Nonnull GenericEvent event) {
+        if (!isHandled(event)) {
+            // don't let unrelated events take a slot of the guild executor
+            return;
+        }
+
+        if (event instanceof GenericUserPresenceEvent presenceEvent) {
+            // with the presence intent we receive every presence update of every member,
+            // only the few that are sitting in an auto channel are of interest to us
+            if (!this.isTrackedMember(presenceEvent.getGuild().getIdLong(), presenceEvent.getMember().getIdLong())) {
+                presenceEventsFiltered.increment();
+                return;
+            }
+            presenceEventsProcessed.increment();
+        }
+
+        long guildId;
+        if (event instanceof GenericGuildEvent guildEvent) {
+            guildId = guildEvent.getGuild().getIdLong();
+        } else if (event instanceof GenericChannelEvent channelEvent && channelEvent.isFromGuild()) {
+            guildId = channelEvent.getGuild().getIdLong();
+        } else if (event instanceof GenericUserPresenceEvent presenceEvent) {
+            guildId = presenceEvent.getGuild().getIdLong();
+        } else {
+            // not related to any guild, there is no state to protect
+            this.onEvent(event);
+            return;
+        }
+        guildExecutor.execute(guildId, () -> this.onEvent(event));
+    }
+
+    /**
+     * @param event the event
+     * @return whether one of the {@link ListenerAdapter} methods of this class handles the event
+     */
+    private static boolean isHandled(@Nonnull GenericEvent event) {
+        return event instanceof GuildVoiceJoinEvent
+                || event instanceof GuildVoiceMoveEvent
+                || event instanceof GuildVoiceLeaveEvent
+                || event instanceof GenericUserPresenceEvent
+                || event instanceof ChannelDeleteEvent
+                || event instanceof ChannelUpdateNameEvent
+                || event instanceof ChannelUpdateUserLimitEvent
+                || event instanceof ChannelUpdateBitrateEvent
+                || event instanceof ChannelUpdateParentEvent
+                || event instanceof PermissionOverrideUpdateEvent;
+    }
+
+    public long getPresenceEventsFiltered() {
+        return presenceEventsFiltered.sum();
+    }
+
+    public long getPresenceEventsProcessed() {
+        return presenceEventsProcessed.sum();
+    }
+
+    private boolean isTrackedMember(long guildId, long userId) {
+        var guildIds = autoChannelMembers.get(userId);
+        return guildIds != null && ArrayUtils.contains(guildIds, guildId);
+    }
+
+    private void trackMember(long guildId, long userId) {
+        // users are shared between guilds, so this is the only map that is written to from several guild executors
+        autoChannelMembers.compute(userId, (id, guildIds) -> {
+            if (guildIds == null) {
+                return new long[]{guildId};
+            }
+            return ArrayUtils.contains(guildIds, guildId) ? guildIds : ArrayUtils.add(guildIds, guildId);
+        });
+    }
+
+    private void untrackMember(long guildId, long userId) {
+        autoChannelMembers.compute(userId, (id, guildIds) -> {
+            if (guildIds == null || guildIds.length == 1 && guildIds[0] == guildId) {
+                return null;
+            }
+            return ArrayUtils.removeElement(guildIds, guildId);
+        });
     }
 
     @Override
@@ -57,18 +223,21 @@ public class AutoChannel extends ListenerAdapter {
         if (event.isFromType(ChannelType.VOICE)) {
             Guild guild = event.getGuild();
             Channel channel = event.getChannel();
-            if (activeChannels.containsValue(channel.getIdLong())) {
+            if (this.removeAutoChannel(channel.getIdLong()) != null) {
                 // An auto channel was deleted, remove it from our maps
-                activeChannels.remove(guild.getIdLong(), channel.getIdLong());
-                channelAuthors.remove(channel.getIdLong());
-                customRenamedChannels.remove(channel.getIdLong());
+                renameScheduler.forget(channel.getIdLong());
                 this.getActiveAutoChannelsForGuild(event.getGuild())
-                        .filter(vc -> !customRenamedChannels.contains(vc.getIdLong()))
-                        .forEach(vc -> vc.getManager().setName(this.createChannelNameFromConnectedMembers(vc)).queue());
+                        .filter(vc -> !this.isCustomRenamed(vc))
+                        .forEach(vc -> renameScheduler.rename(vc, this.createChannelNameFromConnectedMembers(vc)));
             } else if (channel.equals(this.getRootAutoChannel(event.getGuild()))) {
                 // The root channel was deleted, delete all auto channels (this should happen very rarely)
                 // This will trigger the other if-branch above
-                activeChannels.get(guild.getIdLong()).forEach(id -> event.getJDA().getVoiceChannelById(id).delete().queue());
+                for (long id : this.getAutoChannelIds(guild.getIdLong())) {
+                    var vc = guild.getVoiceChannelById(id);
+                    if (vc != null) {
+                        vc.delete().queue();
+                    }
+                }
             }
         }
     }
@@ -76,29 +245,101 @@ public class AutoChannel extends ListenerAdapter {
     @Nonnull
     @CheckReturnValue
     public Stream<AudioChannel> getActiveAutoChannelsForGuild(Guild guild) {
-        return activeChannels.get(guild.getIdLong()).stream().map(guild::getVoiceChannelById);
+        return Arrays.stream(this.getAutoChannelIds(guild.getIdLong())).<AudioChannel>mapToObj(guild::getVoiceChannelById).filter(Objects::nonNull);
+    }
+
+    public boolean isAutoChannel(long channelId) {
+        return autoChannels.containsKey(channelId);
+    }
+
+    private boolean isCustomRenamed(ISnowflake channel) {
+        var state = autoChannels.get(channel.getIdLong());
+        return state != null && state.renamed;
+    }
+
+    @Nonnull
+    private long[] getAutoChannelIds(long guildId) {
+        var ids = guildAutoChannels.get(guildId);
+        return ids != null ? ids : ArrayUtils.EMPTY_LONG_ARRAY;
+    }
+
+    private AutoChannelState addAutoChannel(long guildId, long channelId, long ownerId) {
+        var ids = this.getAutoChannelIds(guildId);
+        var updated = Arrays.copyOf(ids, ids.length + 1);
+        updated[ids.length] = channelId;
+
+        var state = new AutoChannelState(guildId, channelId, ownerId, updated.length);
+        autoChannels.put(channelId, state);
+        guildAutoChannels.put(guildId, updated);
+        stateStore.markDirty(state);
+        return state;
+    }
+
+    @Nullable
+    private AutoChannelState removeAutoChannel(long channelId) {
+        var state = autoChannels.remove(channelId);
+        if (state == null) {
+            return null;
+        }
+
+        var ids = this.getAutoChannelIds(state.guildId);
+        int index = ArrayUtils.indexOf(ids, channelId);
+        if (index >= 0) {
+            var updated = ArrayUtils.remove(ids, index);
+            // every channel after the removed one moves up by one
+            for (int i = index; i < updated.length; i++) {
+                var other = autoChannels.get(updated[i]);
+                if (other != null) {
+                    other.ordinal = i + 1;
+                    stateStore.markDirty(other);
+                }
+            }
+
+            if (updated.length == 0) {
+                guildAutoChannels.remove(state.guildId);
+            } else {
+                guildAutoChannels.put(state.guildId, updated);
+            }
+        }
+        stateStore.markRemoved(channelId);
+        return state;
     }
 
     @Nonnull
     public String createChannelNameFromConnectedMembers(AudioChannel channel) {
-        // Map<Activity Name, Count>
-        Map<String, Long> activities = channel.getMembers().stream()
-                .filter(member -> !member.getUser().isBot())
-                .flatMap(member -> member.getActivities().stream())
-                .filter(activity -> activity.getType() != Activity.ActivityType.CUSTOM_STATUS)
-                .collect(Collectors.groupingBy(Activity::getName, Collectors.counting()))
-                .entrySet().stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .collect(LinkedHashMap::new, (map, entry) -> map.put(entry.getKey(), entry.getValue()), Map::putAll);
-
-        int index = this.getActiveAutoChannelsForGuild(channel.getGuild()).toList().indexOf(channel);
-        var sb = new StringBuilder(String.format("#%d ", index + 1));
+        var config = configCache.get(channel.getGuild().getIdLong()).orElse(null);
+        var defaultName = config != null && config.defaultName() != null ? config.defaultName() : "General";
+
+        var state = autoChannels.get(channel.getIdLong());
+        if (state == null) {
+            // not an auto channel (anymore), there is no histogram to reuse
+            var histogram = new ActivityHistogram();
+            channel.getMembers().forEach(histogram::put);
+            return formatChannelName(0, histogram.getTop(), defaultName);
+        }
+
+        synchronized (state) {
+            // only rebuild the name if anything it is made of has changed
+            int ordinal = state.ordinal;
+            int version = state.activities.getVersion();
+            if (state.name == null || state.nameOrdinal != ordinal || state.nameVersion != version || !defaultName.equals(state.nameDefault)) {
+                state.name = formatChannelName(ordinal, state.activities.getTop(), defaultName);
+                state.nameOrdinal = ordinal;
+                state.nameVersion = version;
+                state.nameDefault = defaultName;
+            }
+            return state.name;
+        }
+    }
+
+    private static String formatChannelName(int ordinal, List<String> activities, String defaultName) {
+        var sb = new StringBuilder(String.format("#%d ", ordinal));
         if (activities.isEmpty()) {
             // One activity ex. "Team Fortress 2" or no activity ex. "General"
-            sb.append("[").append(this.getDefaultChannelName(channel.getGuild()).orElse("General")).append("]");
+            sb.append("[").append(defaultName).append("]");
         } else {
             // Multiple activities ex. "Team Fortress 2, No Man's Sky, Spotify"
-            sb.append(activities.keySet().stream().limit(3).collect(Collectors.joining(", ", "[", "]")));
+            sb.append("[").append(String.join(", ", activities)).append("]");
         }
 
         return StringUtils.abbreviate(sb.toString(), "...]", 100);
@@ -106,33 +347,24 @@ public class AutoChannel extends ListenerAdapter {
 
     @Nullable
     public VoiceChannel getRootAutoChannel(Guild guild) {
-        try {
-            return jdbcTemplate.queryForObject(
-                    "SELECT `root_channel_id` FROM `autochannels` WHERE `guild_id` = ?",
-                    (rs, rowNum) -> guild.getVoiceChannelById(rs.getLong("root_channel_id")),
-                    guild.getIdLong()
-            );
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
+        return configCache.get(guild.getIdLong())
+                .map(config -> guild.getVoiceChannelById(config.rootChannelId()))
+                .orElse(null);
     }
 
     @Nonnull
     public Optional<String> getDefaultChannelName(Guild guild) {
-        var name = jdbcTemplate.queryForObject(
-                "SELECT `default_name` FROM `autochannels` WHERE `guild_id` = ?",
-                (rs, rowNum) -> rs.getString("default_name"),
-                guild.getIdLong()
-        );
-        return Optional.ofNullable(name);
+        return configCache.get(guild.getIdLong()).map(AutoChannelConfig::defaultName);
     }
 
     @Override
     public void onChannelUpdateName(@Nonnull ChannelUpdateNameEvent event) {
         if (event.isFromType(ChannelType.VOICE)) {
-            if (activeChannels.containsValue(event.getChannel().getIdLong()) && !event.getNewValue().equals(this.createChannelNameFromConnectedMembers((VoiceChannel) event.getChannel()))) {
+            var state = autoChannels.get(event.getChannel().getIdLong());
+            if (state != null && !event.getNewValue().equals(this.createChannelNameFromConnectedMembers((VoiceChannel) event.getChannel()))) {
                 // Someone renamed this channel, don't auto-update it anymore
-                customRenamedChannels.add(event.getChannel().getIdLong());
+                state.renamed = true;
+                stateStore.markDirty(state);
             }
         }
     }
@@ -141,10 +373,11 @@ public class AutoChannel extends ListenerAdapter {
     public void onChannelUpdateUserLimit(@Nonnull ChannelUpdateUserLimitEvent event) {
         if (event.isFromType(ChannelType.VOICE)) {
             if (event.getChannel().equals(this.getRootAutoChannel(event.getGuild()))) {
-                this.getActiveAutoChannelsForGuild(event.getGuild())
-                        .map(VoiceChannel.class::cast)
-                        .filter(vc -> event.getOldValue() == vc.getUserLimit())
-                        .forEach(vc -> vc.getManager().setUserLimit(event.getNewValue()).reason("Synced property " + event.getPropertyIdentifier() + " with root channel").queue());
+                var sync = this.getPendingRootSync(event.getGuild());
+                if (!sync.userLimitChanged) {
+                    sync.userLimitChanged = true;
+                    sync.oldUserLimit = event.getOldValue();
+                }
             }
         }
     }
@@ -153,9 +386,11 @@ public class AutoChannel extends ListenerAdapter {
     public void onChannelUpdateBitrate(@Nonnull ChannelUpdateBitrateEvent event) {
         if (event.isFromType(ChannelType.VOICE)) {
             if (event.getChannel().equals(this.getRootAutoChannel(event.getGuild()))) {
-                this.getActiveAutoChannelsForGuild(event.getGuild())
-                        .filter(vc -> event.getOldValue() == vc.getBitrate())
-                        .forEach(vc -> vc.getManager().setBitrate(event.getNewValue()).reason("Synced property " + event.getPropertyIdentifier() + " with root channel").queue());
+                var sync = this.getPendingRootSync(event.getGuild());
+                if (!sync.bitrateChanged) {
+                    sync.bitrateChanged = true;
+                    sync.oldBitrate = event.getOldValue();
+                }
             }
         }
     }
@@ -164,15 +399,7 @@ public class AutoChannel extends ListenerAdapter {
     public void onPermissionOverrideUpdate(@Nonnull PermissionOverrideUpdateEvent event) {
         if (event.getChannelType().isAudio()) {
             if (event.getChannel().asVoiceChannel().equals(this.getRootAutoChannel(event.getGuild()))) {
-                this.getActiveAutoChannelsForGuild(event.getGuild())
-                        .map(VoiceChannel.class::cast)
-                        .forEach(channel -> {
-                            channel.getManager()
-                                    .sync(event.getChannel())
-                                    .putPermissionOverride(event.getGuild().getMemberById(channelAuthors.get(channel.getIdLong())), CHANNEL_AUTHOR_PERMISSIONS_ALLOW, CHANNEL_AUTHOR_PERMISSIONS_DENY)
-                                    .reason("Synced permissions with root channel")
-                                    .queue();
-                        });
+                this.getPendingRootSync(event.getGuild()).permissionsChanged = true;
             }
         }
     }
@@ -180,15 +407,68 @@ public class AutoChannel extends ListenerAdapter {
     @Override
     public void onChannelUpdateParent(@Nonnull ChannelUpdateParentEvent event) {
         if (event.isFromType(ChannelType.VOICE)) {
-            VoiceChannel channel = (VoiceChannel) event.getChannel();
-            if (channel.equals(this.getRootAutoChannel(event.getGuild()))) {
-                this.getActiveAutoChannelsForGuild(event.getGuild())
-                        .map(VoiceChannel.class::cast)
-                        .forEach(vc -> vc.getManager().setParent(channel.getParentCategory()).reason("Synced property " + event.getPropertyIdentifier() + " with root channel").queue());
+            if (event.getChannel().equals(this.getRootAutoChannel(event.getGuild()))) {
+                this.getPendingRootSync(event.getGuild()).parentChanged = true;
             }
         }
     }
 
+    /**
+     * Returns the root channel changes of a guild that have not been synced yet.
+     * The first change schedules a sync after {@value #ROOT_SYNC_DELAY_MILLIS} milliseconds,
+     * so that editing several properties at once only results in one update per auto channel.
+     *
+     * @param guild the guild
+     * @return the pending changes
+     */
+    private PendingRootSync getPendingRootSync(Guild guild) {
+        var sync = pendingRootSyncs.get(guild.getIdLong());
+        if (sync == null) {
+            sync = new PendingRootSync();
+            pendingRootSyncs.put(guild.getIdLong(), sync);
+            syncExecutor.schedule(() -> guildExecutor.execute(guild.getIdLong(), () -> this.syncWithRootChannel(guild)), ROOT_SYNC_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return sync;
+    }
+
+    private void syncWithRootChannel(Guild guild) {
+        var sync = pendingRootSyncs.remove(guild.getIdLong());
+        var root = this.getRootAutoChannel(guild);
+        if (sync == null || root == null) {
+            return;
+        }
+
+        this.getActiveAutoChannelsForGuild(guild).map(VoiceChannel.class::cast).forEach(vc -> {
+            var manager = vc.getManager();
+            List<String> synced = new ArrayList<>();
+            if (sync.userLimitChanged && sync.oldUserLimit == vc.getUserLimit() && root.getUserLimit() != vc.getUserLimit()) {
+                manager.setUserLimit(root.getUserLimit());
+                synced.add("user limit");
+            }
+            if (sync.bitrateChanged && sync.oldBitrate == vc.getBitrate() && root.getBitrate() != vc.getBitrate()) {
+                manager.setBitrate(root.getBitrate());
+                synced.add("bitrate");
+            }
+            if (sync.parentChanged) {
+                manager.setParent(root.getParentCategory());
+                synced.add("parent");
+            }
+            if (sync.permissionsChanged) {
+                manager.sync(root);
+                var state = autoChannels.get(vc.getIdLong());
+                var owner = state != null ? guild.getMemberById(state.ownerId) : null;
+                if (owner != null) {
+                    manager.putPermissionOverride(owner, CHANNEL_AUTHOR_PERMISSIONS_ALLOW, CHANNEL_AUTHOR_PERMISSIONS_DENY);
+                }
+                synced.add("permissions");
+            }
+
+            if (!synced.isEmpty()) {
+                manager.reason("Synced " + String.join(", ", synced) + " with root channel").queue();
+            }
+        });
+    }
+
     @Override
     public void onGuildVoiceJoin(@Nonnull GuildVoiceJoinEvent event) {
         this.onMemberJoinAutoChannel(event.getChannelJoined(), event.getMember());
@@ -198,9 +478,16 @@ public class AutoChannel extends ListenerAdapter {
         if (channelJoined.equals(this.getRootAutoChannel(channelJoined.getGuild()))) {
             // if member joins the root channel, create new auto channel
             this.createAutoChannel(member);
-        } else if (activeChannels.containsValue(channelJoined.getIdLong()) && !customRenamedChannels.contains(channelJoined.getIdLong())) {
-            // the joined channel is an auto channel, let's update it
-            channelJoined.getManager().setName(this.createChannelNameFromConnectedMembers(channelJoined)).queue();
+        } else {
+            var state = autoChannels.get(channelJoined.getIdLong());
+            if (state != null) {
+                // the joined channel is an auto channel, let's update it
+                this.trackMember(state.guildId, member.getIdLong());
+                state.activities.put(member);
+                if (!state.renamed) {
+                    renameScheduler.rename(channelJoined, this.createChannelNameFromConnectedMembers(channelJoined));
+                }
+            }
         }
     }
 
@@ -211,17 +498,16 @@ public class AutoChannel extends ListenerAdapter {
                     .setPosition(rootChannel.getPositionRaw())
                     .addPermissionOverride(author, CHANNEL_AUTHOR_PERMISSIONS_ALLOW, CHANNEL_AUTHOR_PERMISSIONS_DENY)
                     .reason("New auto-channel created by " + author.getUser().getAsTag())
-                    .queue(vc -> {
-                        activeChannels.put(vc.getGuild().getIdLong(), vc.getIdLong());
-                        channelAuthors.put(vc.getIdLong(), author.getIdLong());
+                    .queue(vc -> guildExecutor.execute(vc.getGuild().getIdLong(), () -> {
+                        this.addAutoChannel(vc.getGuild().getIdLong(), vc.getIdLong(), author.getIdLong());
                         vc.getGuild().moveVoiceMember(author, vc).queue();
-                    });
+                    }));
         }
     }
 
     @Override
     public void onGuildVoiceMove(@Nonnull GuildVoiceMoveEvent event) {
-        if (activeChannels.containsValue(event.getChannelLeft().getIdLong())) {
+        if (this.isAutoChannel(event.getChannelLeft().getIdLong())) {
             this.onMemberLeaveAutoChannel((VoiceChannel) event.getChannelLeft(), event.getMember());
         }
 
@@ -230,54 +516,87 @@ public class AutoChannel extends ListenerAdapter {
 
     @Override
     public void onGuildVoiceLeave(@Nonnull GuildVoiceLeaveEvent event) {
-        if (activeChannels.containsValue(event.getChannelLeft().getIdLong())) {
+        if (this.isAutoChannel(event.getChannelLeft().getIdLong())) {
             this.onMemberLeaveAutoChannel((VoiceChannel) event.getChannelLeft(), event.getMember());
         }
     }
 
     @Override
     public void onGenericUserPresence(@Nonnull GenericUserPresenceEvent event) {
-        GuildVoiceState state = event.getMember().getVoiceState();
-        AudioChannel channel = state.getChannel();
-        if (channel != null && activeChannels.containsValue(channel.getIdLong()) && !customRenamedChannels.contains(channel.getIdLong())) {
-            // the rate limit for channel name updates was increased to 2 requests every 10 minutes on 05/02/2020
-            channel.getManager().setName(this.createChannelNameFromConnectedMembers(channel)).timeout(10, TimeUnit.MINUTES).queue();
+        GuildVoiceState voiceState = event.getMember().getVoiceState();
+        AudioChannel channel = voiceState != null ? voiceState.getChannel() : null;
+        var state = channel != null ? autoChannels.get(channel.getIdLong()) : null;
+        if (state != null) {
+            state.activities.put(event.getMember());
+            if (!state.renamed) {
+                renameScheduler.rename(channel, this.createChannelNameFromConnectedMembers(channel));
+            }
+        } else {
+            // the member is no longer in an auto channel, we must have missed them leaving
+            this.untrackMember(event.getGuild().getIdLong(), event.getMember().getIdLong());
         }
     }
 
     private void onMemberLeaveAutoChannel(VoiceChannel vc, Member member) {
+        this.untrackMember(vc.getGuild().getIdLong(), member.getIdLong());
         // all members left the channel
         if (vc.getMembers().isEmpty()) {
-            vc.delete().reason("Every member has left the auto-channel").queue(deleted -> {
+            vc.delete().reason("Every member has left the auto-channel").queue(deleted -> guildExecutor.execute(vc.getGuild().getIdLong(), () -> {
                 this.getActiveAutoChannelsForGuild(vc.getGuild())   // fetch other auto channels to update
                         .filter(v -> v.getIdLong() != vc.getIdLong())   // don't update the channel we just deleted
-                        .filter(v -> !customRenamedChannels.contains(v.getIdLong()))    // don't update custom renamed channels
-                        .forEach(v -> v.getManager().setName(this.createChannelNameFromConnectedMembers(v)).queue());   // update them!
-            });
+                        .filter(v -> !this.isCustomRenamed(v))    // don't update custom renamed channels
+                        .forEach(v -> renameScheduler.rename(v, this.createChannelNameFromConnectedMembers(v)));   // update them!
+            }));
         } else {
             // check if the channel owner left the channel
-            Long currentOwner = channelAuthors.get(vc.getIdLong());
-            if (currentOwner != null && currentOwner == member.getIdLong()) {
-                // determine new channel owner
-                vc.getMembers().stream().findFirst().ifPresent(newOwner -> {
-                    // remove old owner's permissions
-                    var override = vc.getPermissionOverride(member);
-                    if (override != null) {
-                        override.delete().queue();
-                    }
-                    // add new owner's permissions
-                    vc.upsertPermissionOverride(newOwner)
-                            .setAllowed(CHANNEL_AUTHOR_PERMISSIONS_ALLOW)
-                            .setDenied(CHANNEL_AUTHOR_PERMISSIONS_DENY)
-                            .reason("Channel owner " + member.getUser().getAsTag() + " has left their channel, designating " + newOwner.getUser().getAsTag() + " as the new owner")
-                            .queue(changed -> channelAuthors.replace(vc.getIdLong(), newOwner.getIdLong()), e -> channelAuthors.remove(vc.getIdLong()));
-                });
+            var state = autoChannels.get(vc.getIdLong());
+            if (state != null) {
+                state.activities.remove(member.getIdLong());
+            }
+            if (state != null && state.ownerId == member.getIdLong()) {
+                this.transferOwnership(vc, state, member.getIdLong(), member.getUser().getAsTag());
             }
 
-            if (!customRenamedChannels.contains(vc.getIdLong())) {
+            if (!this.isCustomRenamed(vc)) {
                 // auto channel has one less member, updating name
-                vc.getManager().setName(this.createChannelNameFromConnectedMembers(vc)).queue();
+                renameScheduler.rename(vc, this.createChannelNameFromConnectedMembers(vc));
             }
         }
     }
+
+    private void transferOwnership(VoiceChannel vc, AutoChannelState state, long previousOwnerId, String previousOwnerName) {
+        // determine new channel owner
+        vc.getMembers().stream().findFirst().ifPresent(newOwner -> {
+            // remove old owner's permissions
+            vc.getPermissionOverrides().stream()
+                    .filter(override -> override.isMemberOverride() && override.getIdLong() == previousOwnerId)
+                    .findFirst()
+                    .ifPresent(override -> override.delete().queue());
+            // add new owner's permissions
+            vc.upsertPermissionOverride(newOwner)
+                    .setAllowed(CHANNEL_AUTHOR_PERMISSIONS_ALLOW)
+                    .setDenied(CHANNEL_AUTHOR_PERMISSIONS_DENY)
+                    .reason("Channel owner " + previousOwnerName + " has left their channel, designating " + newOwner.getUser().getAsTag() + " as the new owner")
+                    .queue(changed -> guildExecutor.execute(state.guildId, () -> {
+                        state.ownerId = newOwner.getIdLong();
+                        stateStore.markDirty(state);
+                    }), e -> guildExecutor.execute(state.guildId, () -> {
+                        state.ownerId = 0;
+                        stateStore.markDirty(state);
+                    }));
+        });
+    }
+
+    /**
+     * Root channel changes that have not been synced to the auto channels yet.
+     * Only accessed from the guild's executor.
+     */
+    private static final class PendingRootSync {
+        private boolean userLimitChanged;
+        private int oldUserLimit;
+        private boolean bitrateChanged;
+        private int oldBitrate;
+        private boolean parentChanged;
+        private boolean permissionsChanged;
+    }
 }
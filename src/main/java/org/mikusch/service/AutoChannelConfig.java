@@ -0,0 +1,13 @@
+package org.mikusch.service;
+
+import javax.annotation.Nullable;
+
+/**
+ * Snapshot of a guild's row in the {@code autochannels} table.
+ *
+ * @param guildId       the guild ID
+ * @param rootChannelId the ID of the voice channel that spawns new auto channels
+ * @param defaultName   the name used for auto channels without any activities, may be {@code null}
+ */
+public record AutoChannelConfig(long guildId, long rootChannelId, @Nullable String defaultName) {
+}
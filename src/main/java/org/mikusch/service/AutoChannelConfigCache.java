@@ -0,0 +1,142 @@
+package org.mikusch.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-through cache of the {@code autochannels} table.
+ * <p>
+ * All rows are loaded in bulk at startup and refreshed periodically. Guilds without a row are cached as
+ * {@link Optional#empty()} so that they never hit the database on voice or presence events.
+ */
+@Component
+public class AutoChannelConfigCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AutoChannelConfigCache.class);
+    private static final long REFRESH_INTERVAL_MINUTES = 10;
+    private static final RowMapper<AutoChannelConfig> ROW_MAPPER = (rs, rowNum) -> new AutoChannelConfig(
+            rs.getLong("guild_id"),
+            rs.getLong("root_channel_id"),
+            rs.getString("default_name")
+    );
+
+    private final Map<Long, Optional<AutoChannelConfig>> configs = new ConcurrentHashMap<>();   // Map<Guild ID, Config>
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public AutoChannelConfigCache(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+
+        reload();
+        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> {
+            try {
+                reload();
+            } catch (Exception e) {
+                LOG.error("Failed to refresh auto channel configs", e);
+            }
+        }, REFRESH_INTERVAL_MINUTES, REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Returns the cached config for a guild, loading it from the database on a miss. Misses block, which is fine for
+     * the guild executors of {@link AutoChannel} but must not happen on JDA's event threads.
+     *
+     * @param guildId the guild ID
+     * @return the config, or {@link Optional#empty()} if the guild has no auto channel
+     */
+    @Nonnull
+    public Optional<AutoChannelConfig> get(long guildId) {
+        var config = configs.get(guildId);
+        if (config != null) {
+            hits.increment();
+            return config;
+        }
+
+        misses.increment();
+        return configs.computeIfAbsent(guildId, this::load);
+    }
+
+    /**
+     * Stores a config and writes it through to the database.
+     *
+     * @param config the new config
+     */
+    public void put(@Nonnull AutoChannelConfig config) {
+        jdbcTemplate.update(
+                "INSERT INTO `autochannels` (`guild_id`, `root_channel_id`, `default_name`) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE `root_channel_id` = VALUES(`root_channel_id`), `default_name` = VALUES(`default_name`)",
+                config.guildId(), config.rootChannelId(), config.defaultName()
+        );
+        configs.put(config.guildId(), Optional.of(config));
+    }
+
+    /**
+     * Removes a guild's config and writes the removal through to the database.
+     *
+     * @param guildId the guild ID
+     */
+    public void remove(long guildId) {
+        jdbcTemplate.update("DELETE FROM `autochannels` WHERE `guild_id` = ?", guildId);
+        configs.put(guildId, Optional.empty());
+    }
+
+    /**
+     * Drops the cached config of a guild, the next lookup will read it from the database again.
+     * Call this if the row was changed outside of this cache.
+     *
+     * @param guildId the guild ID
+     */
+    public void invalidate(long guildId) {
+        configs.remove(guildId);
+    }
+
+    /**
+     * Reloads all configs from the database in a single query.
+     * Guilds that no longer have a row are negatively cached.
+     */
+    public void reload() {
+        Map<Long, AutoChannelConfig> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT `guild_id`, `root_channel_id`, `default_name` FROM `autochannels`", ROW_MAPPER)
+                .forEach(config -> loaded.put(config.guildId(), config));
+
+        loaded.forEach((guildId, config) -> configs.put(guildId, Optional.of(config)));
+        configs.replaceAll((guildId, config) -> Optional.ofNullable(loaded.get(guildId)));
+        LOG.debug("Loaded {} auto channel configs (cache hits: {}, misses: {})", loaded.size(), getHits(), getMisses());
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Optional<AutoChannelConfig> load(long guildId) {
+        try {
+            return Optional.ofNullable(jdbcTemplate.queryForObject(
+                    "SELECT `guild_id`, `root_channel_id`, `default_name` FROM `autochannels` WHERE `guild_id` = ?",
+                    ROW_MAPPER,
+                    guildId
+            ));
+        } catch (EmptyResultDataAccessException e) {
+            return Optional.empty();
+        }
+    }
+}
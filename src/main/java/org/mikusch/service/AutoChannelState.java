@@ -0,0 +1,27 @@
+package org.mikusch.service;
+
+/**
+ * Runtime state of a single auto channel.
+ */
+final class AutoChannelState {
+
+    final long guildId;
+    final long channelId;
+    volatile long ownerId;      // 0 if the channel has no owner
+    volatile boolean renamed;   // true if someone renamed the channel, it won't be renamed automatically anymore
+    volatile int ordinal;       // 1-based position among the guild's auto channels
+    final ActivityHistogram activities = new ActivityHistogram();
+
+    // the last generated channel name and what it was generated from, guarded by this
+    String name;
+    int nameOrdinal;
+    int nameVersion;
+    String nameDefault;
+
+    AutoChannelState(long guildId, long channelId, long ownerId, int ordinal) {
+        this.guildId = guildId;
+        this.channelId = channelId;
+        this.ownerId = ownerId;
+        this.ordinal = ordinal;
+    }
+}
@@ -0,0 +1,118 @@
+package org.mikusch.service;
+
+import org.mikusch.util.ConcurrentLongMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists {@link AutoChannelState}s to the {@code autochannel_states} table.
+ * <p>
+ * Changes are only marked as dirty on the calling thread and written in batches every
+ * {@value #FLUSH_INTERVAL_SECONDS} seconds, as well as on shutdown.
+ */
+@Component
+public class AutoChannelStateStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AutoChannelStateStore.class);
+    private static final long FLUSH_INTERVAL_SECONDS = 5;
+    private static final AutoChannelState REMOVED = new AutoChannelState(0, 0, 0, 0);
+
+    private final ConcurrentLongMap<AutoChannelState> dirty = new ConcurrentLongMap<>();    // Map<Voice Channel ID, State>
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public AutoChannelStateStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                LOG.error("Failed to persist auto channel states", e);
+            }
+        }, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Loads all persisted states, ordered by guild and ordinal.
+     *
+     * @return the persisted states
+     */
+    @Nonnull
+    List<AutoChannelState> loadAll() {
+        return jdbcTemplate.query(
+                "SELECT `channel_id`, `guild_id`, `owner_id`, `renamed`, `ordinal` FROM `autochannel_states` ORDER BY `guild_id`, `ordinal`",
+                (rs, rowNum) -> {
+                    var state = new AutoChannelState(rs.getLong("guild_id"), rs.getLong("channel_id"), rs.getLong("owner_id"), rs.getInt("ordinal"));
+                    state.renamed = rs.getBoolean("renamed");
+                    return state;
+                }
+        );
+    }
+
+    /**
+     * Schedules a state to be written with the next flush.
+     *
+     * @param state the changed state
+     */
+    void markDirty(@Nonnull AutoChannelState state) {
+        dirty.put(state.channelId, state);
+    }
+
+    /**
+     * Schedules a state to be deleted with the next flush.
+     *
+     * @param channelId the ID of the auto channel that no longer exists
+     */
+    void markRemoved(long channelId) {
+        dirty.put(channelId, REMOVED);
+    }
+
+    @PreDestroy
+    public synchronized void flush() {
+        Map<Long, AutoChannelState> taken = new HashMap<>();  // Map<Voice Channel ID, State>
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        dirty.forEach((channelId, state) -> {
+            // a state marked again after this point will be picked up by the next flush
+            dirty.remove(channelId, state);
+            taken.put(channelId, state);
+            if (state == REMOVED) {
+                deletes.add(new Object[]{channelId});
+            } else {
+                upserts.add(new Object[]{state.channelId, state.guildId, state.ownerId, state.renamed, state.ordinal});
+            }
+        });
+
+        try {
+            if (!upserts.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO `autochannel_states` (`channel_id`, `guild_id`, `owner_id`, `renamed`, `ordinal`) VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE `owner_id` = VALUES(`owner_id`), `renamed` = VALUES(`renamed`), `ordinal` = VALUES(`ordinal`)",
+                        upserts
+                );
+            }
+            if (!deletes.isEmpty()) {
+                jdbcTemplate.batchUpdate("DELETE FROM `autochannel_states` WHERE `channel_id` = ?", deletes);
+            }
+        } catch (RuntimeException e) {
+            // write them again with the next flush, unless they were marked again in the meantime
+            taken.forEach(dirty::putIfAbsent);
+            throw e;
+        }
+    }
+}
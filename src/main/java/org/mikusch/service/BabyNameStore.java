@@ -0,0 +1,93 @@
+package org.mikusch.service;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baby names from the @Babysnames twitter.
+ * <p>
+ * Only statuses newer than the newest one seen so far are fetched, the ID of which is persisted together with the
+ * names. Readers pick from an immutable array that is replaced as a whole whenever new names arrive, so picking a name
+ * never takes a lock.
+ */
+@Component
+public class BabyNameStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BabyNameStore.class);
+    private static final long BABYSNAMES_ACCOUNT_ID = 1592227514;
+    private static final int MAX_NAME_LENGTH = 32;
+
+    private volatile String[] names;
+
+    private final TwitterService twitterService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public BabyNameStore(TwitterService twitterService, JdbcTemplate jdbcTemplate) {
+        this.twitterService = twitterService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.names = jdbcTemplate.queryForList("SELECT `name` FROM `baby_names`", String.class).toArray(String[]::new);
+
+        // Periodically fetch new baby names from the @Babysnames twitter
+        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> {
+            try {
+                sync();
+            } catch (TwitterException e) {
+                LOG.error("Failed to fetch statuses", e);
+            } catch (Exception e) {
+                LOG.error("Failed to store baby names", e);
+            }
+        }, 0, 1, TimeUnit.HOURS);
+    }
+
+    private void sync() throws TwitterException {
+        var sinceIds = jdbcTemplate.queryForList("SELECT `since_id` FROM `twitter_sync` WHERE `user_id` = ?", Long.class, BABYSNAMES_ACCOUNT_ID);
+        long sinceId = sinceIds.isEmpty() ? 0 : sinceIds.get(0);
+
+        var statuses = twitterService.getStatusesForUserSince(BABYSNAMES_ACCOUNT_ID, sinceId);
+        if (statuses.isEmpty()) {
+            return;
+        }
+
+        Set<String> known = new HashSet<>(Arrays.asList(names));
+        List<String> added = statuses.stream()
+                .filter(status -> !status.isRetweet()) // no retweets
+                .filter(status -> status.getUserMentionEntities().length == 0) // no user mentions
+                .filter(status -> !status.getText().startsWith("@")) // catch unresolved mentions too
+                .filter(status -> status.getText().length() <= MAX_NAME_LENGTH) // only names that fit the character limit
+                .filter(status -> status.getURLEntities().length == 0) // no URLs
+                .filter(status -> status.getMediaEntities().length == 0) // no media
+                .map(Status::getText)
+                .filter(known::add)
+                .toList();
+
+        if (!added.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT IGNORE INTO `baby_names` (`name`) VALUES (?)", added.stream().map(name -> new Object[]{name}).toList());
+            names = ArrayUtils.addAll(names, added.toArray(String[]::new));
+        }
+        long newestId = statuses.stream().mapToLong(Status::getId).max().orElse(sinceId);
+        jdbcTemplate.update("INSERT INTO `twitter_sync` (`user_id`, `since_id`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `since_id` = VALUES(`since_id`)", BABYSNAMES_ACCOUNT_ID, newestId);
+        LOG.info("Fetched {} statuses, {} new baby names, {} in total", statuses.size(), added.size(), names.length);
+    }
+
+    /**
+     * @param random the source of randomness
+     * @return a random baby name, or {@code null} if none were fetched yet
+     */
+    @Nullable
+    public String random(Random random) {
+        var snapshot = names;
+        return snapshot.length == 0 ? null : snapshot[random.nextInt(snapshot.length)];
+    }
+}
@@ -0,0 +1,195 @@
+package org.mikusch.service;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.GuildChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces channel renames so that they respect Discord's rename rate limit.
+ * <p>
+ * Only the most recently requested name is kept per channel. A rename is only sent if the name actually differs
+ * from the current one, and at most {@value #RENAMES_PER_WINDOW} renames are sent per channel within
+ * {@link #WINDOW_MILLIS}. Renames that exceed the budget are delayed until a slot frees up.
+ */
+@Component
+public class ChannelRenameScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChannelRenameScheduler.class);
+
+    // the rate limit for channel name updates was increased to 2 requests every 10 minutes on 05/02/2020
+    private static final int RENAMES_PER_WINDOW = 2;
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long STATS_INTERVAL_MINUTES = 10;
+
+    private final Map<Long, RenameState> states = new ConcurrentHashMap<>();  // Map<Channel ID, State>
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private final JDA jda;
+
+    @Autowired
+    public ChannelRenameScheduler(JDA jda) {
+        this.jda = jda;
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                LOG.info("{} channels waiting for a rename, {} renames sent, {} coalesced, {} dropped", getQueueDepth(), getSentCount(), getCoalescedCount(), getDroppedCount());
+            } catch (Exception e) {
+                LOG.error("Failed to log rename statistics", e);
+            }
+        }, STATS_INTERVAL_MINUTES, STATS_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Requests a channel to be renamed. Replaces any rename for this channel that has not been sent yet.
+     *
+     * @param channel the channel to rename
+     * @param name    the desired name
+     */
+    public void rename(@Nonnull GuildChannel channel, @Nonnull String name) {
+        var state = states.computeIfAbsent(channel.getIdLong(), RenameState::new);
+        synchronized (state) {
+            if (state.pendingName != null) {
+                coalesced.increment();
+            } else if (!state.inFlight && state.scheduled == null && name.equals(channel.getName())) {
+                // nothing queued and the channel already has the desired name
+                dropped.increment();
+                return;
+            }
+
+            state.pendingName = name;
+            if (!state.inFlight && state.scheduled == null) {
+                schedule(state, 0);
+            }
+        }
+    }
+
+    /**
+     * Discards any pending rename for a channel, e.g. because it was deleted.
+     *
+     * @param channelId the channel ID
+     */
+    public void forget(long channelId) {
+        var state = states.remove(channelId);
+        if (state != null) {
+            synchronized (state) {
+                if (state.pendingName != null) {
+                    dropped.increment();
+                    state.pendingName = null;
+                }
+                if (state.scheduled != null) {
+                    state.scheduled.cancel(false);
+                    state.scheduled = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of channels with a rename that has not been sent yet
+     */
+    public int getQueueDepth() {
+        return (int) states.values().stream().filter(state -> state.pendingName != null).count();
+    }
+
+    /**
+     * @return the number of renames that were sent to Discord
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * @return the number of renames that were replaced by a newer name before they were sent
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of renames that were not sent because the name was already correct or the channel is gone
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private void schedule(RenameState state, long delayMillis) {
+        state.scheduled = executor.schedule(() -> flush(state), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(RenameState state) {
+        synchronized (state) {
+            state.scheduled = null;
+            if (state.pendingName == null) {
+                return;
+            }
+
+            GuildChannel channel = jda.getGuildChannelById(state.channelId);
+            if (channel == null) {
+                dropped.increment();
+                state.pendingName = null;
+                states.remove(state.channelId, state);
+                return;
+            }
+
+            if (state.pendingName.equals(channel.getName())) {
+                // the name is already correct, don't spend any of our budget on it
+                dropped.increment();
+                state.pendingName = null;
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            while (!state.renameTimes.isEmpty() && state.renameTimes.peekFirst() + WINDOW_MILLIS <= now) {
+                state.renameTimes.pollFirst();
+            }
+            if (state.renameTimes.size() >= RENAMES_PER_WINDOW) {
+                // out of budget, try again once the oldest rename has left the window
+                schedule(state, state.renameTimes.peekFirst() + WINDOW_MILLIS - now);
+                return;
+            }
+
+            String name = state.pendingName;
+            state.pendingName = null;
+            state.inFlight = true;
+            state.renameTimes.addLast(now);
+            sent.increment();
+            channel.getManager().setName(name).queue(success -> onRenamed(state), failure -> {
+                LOG.debug("Failed to rename channel {} to {}", state.channelId, name, failure);
+                onRenamed(state);
+            });
+        }
+    }
+
+    private void onRenamed(RenameState state) {
+        synchronized (state) {
+            state.inFlight = false;
+            if (state.pendingName != null && state.scheduled == null) {
+                schedule(state, 0);
+            }
+        }
+    }
+
+    private static final class RenameState {
+        private final long channelId;
+        private final Deque<Long> renameTimes = new ArrayDeque<>(RENAMES_PER_WINDOW);
+        private volatile String pendingName;
+        private boolean inFlight;
+        private ScheduledFuture<?> scheduled;
+
+        private RenameState(long channelId) {
+            this.channelId = channelId;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.mikusch.service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.mikusch.util.KeyedSerialExecutor;
+import org.mikusch.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs blocking database work off JDA's event and callback threads.
+ * <p>
+ * Tasks with the same key, usually a guild ID, run one after another in submission order. At most
+ * {@code eclipse.database.queue-capacity} tasks may be pending, further tasks are shed instead of stalling the caller.
+ * The time tasks spend queued and running is recorded per task type.
+ */
+@Component
+public class DatabaseExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DatabaseExecutor.class);
+    private static final long STATS_INTERVAL_MINUTES = 10;
+
+    private final ExecutorService pool;
+    private final ScheduledExecutorService statsExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("database-stats").setDaemon(true).build());
+    private final KeyedSerialExecutor executor;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final int capacity;
+    private final Map<String, TaskMetrics> metrics = new ConcurrentHashMap<>();    // Map<Task Type, Metrics>
+    private final RateLimiter shedWarnings = RateLimiter.create(1);
+
+    @Autowired
+    public DatabaseExecutor(@Value("${eclipse.database.threads}") int threads, @Value("${eclipse.database.queue-capacity}") int capacity) {
+        this.pool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("database-%d").setDaemon(true).build());
+        this.executor = new KeyedSerialExecutor(pool);
+        this.capacity = capacity;
+        statsExecutor.scheduleAtFixedRate(() -> {
+            try {
+                LOG.info("{} database tasks pending", getPendingCount());
+                metrics.forEach((type, taskMetrics) -> LOG.info("{} tasks: {}", type, taskMetrics));
+            } catch (Exception e) {
+                LOG.error("Failed to log database executor statistics", e);
+            }
+        }, STATS_INTERVAL_MINUTES, STATS_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Queues a task after all tasks previously submitted with the same key.
+     *
+     * @param type the task type the timings are recorded for
+     * @param key  the ordering key, usually a guild ID, must not be {@code 0}
+     * @param task the task
+     * @return the result of the task, fails with a {@link RejectedExecutionException} if the task was shed
+     */
+    @Nonnull
+    public <T> CompletableFuture<T> submit(@Nonnull String type, long key, @Nonnull Callable<T> task) {
+        var taskMetrics = metrics.computeIfAbsent(type, t -> new TaskMetrics());
+        var future = new CompletableFuture<T>();
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            taskMetrics.shed.increment();
+            if (shedWarnings.tryAcquire()) {
+                LOG.warn("Database executor is saturated, shedding {} tasks", type);
+            }
+            future.completeExceptionally(new RejectedExecutionException("Database executor is saturated"));
+            return future;
+        }
+
+        long queuedNanos = System.nanoTime();
+        executor.execute(key, () -> {
+            long startNanos = System.nanoTime();
+            taskMetrics.queueTime.record(startNanos - queuedNanos);
+            try {
+                future.complete(task.call());
+            } catch (Exception e) {
+                taskMetrics.failed.increment();
+                LOG.error("Failed to run {} task", type, e);
+                future.completeExceptionally(e);
+            } finally {
+                taskMetrics.runTime.record(System.nanoTime() - startNanos);
+                pending.decrementAndGet();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @see #submit(String, long, Callable)
+     */
+    @Nonnull
+    public CompletableFuture<Void> execute(@Nonnull String type, long key, @Nonnull Runnable task) {
+        return submit(type, key, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return the metrics of every task type that was submitted so far
+     */
+    public Map<String, TaskMetrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        statsExecutor.shutdownNow();
+        pool.shutdown();
+        if (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOG.warn("Database executor did not stop in time, {} tasks are still pending", pending.get());
+        }
+    }
+
+    public static final class TaskMetrics {
+        private final LatencyHistogram queueTime = new LatencyHistogram();
+        private final LatencyHistogram runTime = new LatencyHistogram();
+        private final LongAdder shed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        public LatencyHistogram getQueueTime() {
+            return queueTime;
+        }
+
+        public LatencyHistogram getRunTime() {
+            return runTime;
+        }
+
+        public long getShedCount() {
+            return shed.sum();
+        }
+
+        public long getFailedCount() {
+            return failed.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("queued: %s, running: %s, shed: %d, failed: %d", queueTime, runTime, getShedCount(), getFailedCount());
+        }
+    }
+}
@@ -1,69 +1,261 @@
 package org.mikusch.service;
 
-import club.minnced.discord.webhook.WebhookClientBuilder;
 import club.minnced.discord.webhook.receive.ReadonlyMessage;
+import club.minnced.discord.webhook.send.AllowedMentions;
+import club.minnced.discord.webhook.send.WebhookMessage;
+import club.minnced.discord.webhook.send.WebhookMessageBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.*;
-import net.dv8tion.jda.api.entities.channel.unions.IWebhookContainerUnion;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import org.mikusch.util.ChannelProbe;
+import org.mikusch.util.ConcurrentLongMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.sql.ResultSet;
 import java.time.Duration;
 import java.time.OffsetDateTime;
-import java.util.Collection;
+import java.util.*;
 import java.util.concurrent.*;
 
 @Service
 public class DefaultThinkerService implements ThinkerService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultThinkerService.class);
+    private static final long MIN_CHECK_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_CHECK_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long CHECK_JITTER_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long REGISTRATION_REFRESH_MINUTES = 10;
+    private static final long MESSAGE_RATE_FLUSH_MINUTES = 5;
+    private static final int MAX_RESOLVE_ATTEMPTS = 5;
 
     private final ConcurrentHashMap<Long, OffsetDateTime> lastPostedTimes = new ConcurrentHashMap<>();
+    private final ConcurrentLongMap<ThoughtIndex> thoughtIndexes = new ConcurrentLongMap<>();   // Map<Guild ID, Thoughts>
+    private final ConcurrentLongMap<Check> scheduledChecks = new ConcurrentLongMap<>();  // Map<Guild ID, Check>
+    private final ConcurrentLongMap<OffsetDateTime> nextDueTimes = new ConcurrentLongMap<>();   // Map<Guild ID, Next Thinker>
+    private final ConcurrentLongMap<ThinkerRegistration> registrations = new ConcurrentLongMap<>(); // Map<Guild ID, Thinker>
+    private final ConcurrentLongMap<MessageRate> messageRates = new ConcurrentLongMap<>();  // Map<Channel ID, Rate>
+    private final ConcurrentLongMap<MessageRate> dirtyMessageRates = new ConcurrentLongMap<>(); // Map<Channel ID, Rate>
+    private final ConcurrentLongMap<ConcurrentLongMap<Boolean>> eligibleChannels = new ConcurrentLongMap<>();   // Map<Guild ID, Map<Channel ID, Eligible>>
+    private final ConcurrentLongMap<Boolean> parkedChannels = new ConcurrentLongMap<>();  // Map<Channel ID, Parked>
+    private final ConcurrentLongMap<Queue<PreparedThought>> prefetchedThoughts = new ConcurrentLongMap<>();   // Map<Guild ID, Next Thoughts>
     private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 
     private final JdbcTemplate jdbcTemplate;
+    private final ThoughtWriter thoughtWriter;
+    private final WebhookClientPool webhookClientPool;
+    private final JDA jda;
+    private final boolean storeContents;
+    private final int prefetch;
 
     @Autowired
-    public DefaultThinkerService(JdbcTemplate jdbcTemplate, JDA jda) {
+    public DefaultThinkerService(JdbcTemplate jdbcTemplate, ThoughtWriter thoughtWriter, WebhookClientPool webhookClientPool, JDA jda,
+                                 @Value("${eclipse.thinker.store-contents}") boolean storeContents, @Value("${eclipse.thinker.prefetch}") int prefetch) {
         this.jdbcTemplate = jdbcTemplate;
+        this.thoughtWriter = thoughtWriter;
+        this.webhookClientPool = webhookClientPool;
+        this.jda = jda;
+        this.storeContents = storeContents;
+        this.prefetch = prefetch;
+        this.loadThoughtIndexes();
+        // keep the index in sync with the table if the writer has to give up on new thoughts
+        thoughtWriter.setDroppedInsertListener((guildId, messageId) -> getThoughtIndex(guildId).remove(messageId));
+        this.loadMessageRates();
+        this.refreshRegistrations();
 
-        executor.scheduleAtFixedRate(() -> {
-            var sqlRowSet = jdbcTemplate.queryForRowSet("SELECT `guild_id`, `webhook_id` FROM `thinkers`");
-            while (sqlRowSet.next()) {
-                var guild = jda.getGuildById(sqlRowSet.getLong("guild_id"));
-                if (guild != null) {
-                    jda.retrieveWebhookById(sqlRowSet.getLong("webhook_id")).queue(webhook -> triggerThinker(guild, webhook));
+        // Only picks up added, changed or removed Thinkers, each Thinker is checked by its own scheduled task
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                refreshRegistrations();
+            } catch (Exception e) {
+                LOGGER.error("Failed to refresh Thinker registrations", e);
+            }
+        }, REGISTRATION_REFRESH_MINUTES, REGISTRATION_REFRESH_MINUTES, TimeUnit.MINUTES);
+
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                flushMessageRates();
+            } catch (Exception e) {
+                LOGGER.error("Failed to persist message rates", e);
+            }
+        }, MESSAGE_RATE_FLUSH_MINUTES, MESSAGE_RATE_FLUSH_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private void loadMessageRates() {
+        jdbcTemplate.query("SELECT `channel_id`, `interval_millis`, `last_message_time` FROM `thinker_message_rates`", (RowCallbackHandler) rs ->
+                messageRates.put(rs.getLong("channel_id"), new MessageRate(rs.getDouble("interval_millis"), rs.getLong("last_message_time")))
+        );
+    }
+
+    /**
+     * Writes all message rates that changed since the last flush.
+     */
+    @PreDestroy
+    public synchronized void flushMessageRates() {
+        List<Object[]> rows = new ArrayList<>();
+        dirtyMessageRates.forEach((channelId, rate) -> {
+            dirtyMessageRates.remove(channelId, rate);
+            double interval = rate.getIntervalMillis();
+            if (!Double.isNaN(interval)) {
+                rows.add(new Object[]{channelId, interval, rate.getLastMessageMillis()});
+            }
+        });
+
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO `thinker_message_rates` (`channel_id`, `interval_millis`, `last_message_time`) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE `interval_millis` = VALUES(`interval_millis`), `last_message_time` = VALUES(`last_message_time`)",
+                    rows
+            );
+        }
+    }
+
+    /**
+     * Reloads all Thinker registrations. Schedules a check for every guild with a Thinker that isn't scheduled yet,
+     * and cancels the checks of guilds whose Thinker was removed. New guilds are spread out over the first minute.
+     */
+    private void refreshRegistrations() {
+        Map<Long, ThinkerRegistration> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT `guild_id`, `webhook_id`, `frequency` FROM `thinkers`", (RowCallbackHandler) rs -> {
+            var registration = new ThinkerRegistration(rs.getLong("guild_id"), rs.getLong("webhook_id"), rs.getDouble("frequency"));
+            loaded.put(registration.guildId, registration);
+        });
+
+        loaded.forEach((guildId, registration) -> {
+            var previous = registrations.put(guildId, registration);
+            if (previous != null) {
+                registration.inheritWebhook(previous);
+                if (previous.webhookId != registration.webhookId) {
+                    webhookClientPool.invalidate(previous.webhookId);
                 }
             }
-        }, 0, 1, TimeUnit.MINUTES);
+            if (!scheduledChecks.containsKey(guildId)) {
+                var check = new Check(guildId);
+                scheduledChecks.put(guildId, check);
+                scheduleCheck(check, Math.floorMod(spread(guildId), MIN_CHECK_DELAY_MILLIS));
+            }
+        });
+        registrations.forEach((guildId, registration) -> {
+            if (!loaded.containsKey(guildId)) {
+                registrations.remove(guildId);
+                prefetchedThoughts.remove(guildId);
+                webhookClientPool.invalidate(registration.webhookId);
+                nextDueTimes.remove(guildId);
+                var check = scheduledChecks.remove(guildId);
+                if (check != null) {
+                    check.cancel();
+                }
+            }
+        });
+    }
+
+    private void scheduleCheck(Check check, long delayMillis) {
+        check.future = executor.schedule(() -> runCheck(check), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return whether the check still belongs to a registered Thinker, a removed or re-added Thinker gets a new check
+     */
+    private boolean isCurrent(Check check) {
+        return scheduledChecks.get(check.guildId) == check && registrations.containsKey(check.guildId);
+    }
+
+    private void runCheck(Check check) {
+        if (!isCurrent(check)) {
+            return;
+        }
+
+        long guildId = check.guildId;
+        var guild = jda.getGuildById(guildId);
+        if (guild == null) {
+            scheduleCheck(check, MAX_CHECK_DELAY_MILLIS);
+            return;
+        }
+
+        getThinker(guild)
+                .thenCompose(webhook -> webhook != null ? triggerThinker(guild, webhook) : CompletableFuture.completedFuture(null))
+                .whenComplete((message, throwable) -> {
+                    if (throwable != null) {
+                        LOGGER.error("Failed to check Thinker for {}", guild, throwable);
+                    }
+
+                    // wake up around the time the next Thinker is due, but keep an eye on changing activity
+                    var due = nextDueTimes.get(guildId);
+                    long delay = due != null ? Duration.between(OffsetDateTime.now(), due).toMillis() : MIN_CHECK_DELAY_MILLIS;
+                    delay = Math.max(MIN_CHECK_DELAY_MILLIS, Math.min(MAX_CHECK_DELAY_MILLIS, delay));
+                    if (isCurrent(check)) {
+                        scheduleCheck(check, delay + Math.floorMod(spread(guildId), CHECK_JITTER_MILLIS));
+                    }
+                });
+    }
+
+    /**
+     * @param guildId the guild ID
+     * @return a well distributed number derived from the guild ID, used to keep guilds from being due at the same time
+     */
+    private static long spread(long guildId) {
+        long h = guildId * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * Loads all thoughts into memory, streaming the rows instead of buffering the whole result set.
+     */
+    private void loadThoughtIndexes() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.query(con -> {
+            var statement = con.prepareStatement("SELECT `guild_id`, `channel_id`, `message_id` FROM `thoughts`", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(Integer.MIN_VALUE);  // tells the MySQL driver to stream rows
+            return statement;
+        }, (RowCallbackHandler) rs -> getThoughtIndex(rs.getLong("guild_id")).add(rs.getLong("channel_id"), rs.getLong("message_id")));
+
+        int[] count = {0};
+        thoughtIndexes.forEach((guildId, index) -> count[0] += index.size());
+        LOGGER.info("Loaded {} thoughts in {} ms", count[0], System.currentTimeMillis() - start);
+    }
+
+    private ThoughtIndex getThoughtIndex(long guildId) {
+        var index = thoughtIndexes.get(guildId);
+        if (index == null) {
+            thoughtIndexes.putIfAbsent(guildId, new ThoughtIndex());
+            index = thoughtIndexes.get(guildId);
+        }
+        return index;
     }
 
     @Override
     public CompletableFuture<Webhook> getThinker(Guild guild) {
-        try {
-            return jdbcTemplate.queryForObject(
-                    "SELECT `webhook_id` FROM `thinkers` WHERE `guild_id` = ?",
-                    (rs, rowNum) -> guild.getJDA().retrieveWebhookById(rs.getLong("webhook_id")).submit(),
-                    guild.getIdLong()
-            );
-        } catch (EmptyResultDataAccessException e) {
-            return CompletableFuture.completedFuture(null);
-        }
+        var registration = registrations.get(guild.getIdLong());
+        return registration != null ? registration.getWebhook(guild.getJDA()) : CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public boolean hasThinker(Guild guild) {
+        return registrations.containsKey(guild.getIdLong());
     }
 
     @Override
     public Double getFrequency(Guild guild) {
-        return jdbcTemplate.queryForObject(
-                "SELECT `frequency` FROM `thinkers` WHERE `guild_id` = ?",
-                (rs, rowNum) -> rs.getDouble("frequency"),
-                guild.getIdLong()
-        );
+        var registration = registrations.get(guild.getIdLong());
+        return registration != null ? registration.frequency : null;
+    }
+
+    @Override
+    public void invalidateThinkerWebhooks(Channel channel) {
+        registrations.forEach((guildId, registration) -> {
+            if (registration.getChannelId() == channel.getIdLong()) {
+                webhookClientPool.invalidate(registration.webhookId);
+                registration.invalidateWebhook();
+            }
+        });
     }
 
     @Override
@@ -85,96 +277,336 @@ public class DefaultThinkerService implements ThinkerService {
         if (immediate) {
             return triggerThinkerImmediate(guild, webhook);
         } else {
-            IWebhookContainerUnion channel = webhook.getChannel();
             OffsetDateTime lastPostedTime = lastPostedTimes.computeIfAbsent(webhook.getIdLong(), webhookId -> OffsetDateTime.now());
 
-            return channel.asTextChannel()
-                    .getHistory()
-                    .retrievePast(100)
-                    .submit()
-                    .thenApply(messages -> messages.stream().filter(this::isValidMessage).map(ISnowflake::getTimeCreated).toList())
-                    .thenApply(timestamps -> {
-                        //Calculate the average interval between messages sent in the current channel
-                        double avgMillis = timestamps.stream().mapToLong(timestamp -> Duration.between(timestamp, lastPostedTime).toMillis()).average().orElse(0);
-                        return Duration.ofMillis((long) (avgMillis / getFrequency(guild)));
-                    })
-                    .thenCompose(duration -> {
-                        if (lastPostedTime.plus(duration).isBefore(OffsetDateTime.now())) {
-                            return triggerThinkerImmediate(guild, webhook);
-                        } else {
-                            LOGGER.debug("The next Thinker for {} will be triggered around {}", guild, lastPostedTime.plus(duration));
-                            return CompletableFuture.completedFuture(null);
-                        }
-                    });
+            var rate = messageRates.get(webhook.getChannel().getIdLong());
+            double intervalMillis = rate != null ? rate.getIntervalMillis(System.currentTimeMillis()) : Double.NaN;
+            if (Double.isNaN(intervalMillis)) {
+                LOGGER.debug("Not enough messages in {} to time the next Thinker for {}", webhook.getChannel(), guild);
+                nextDueTimes.remove(guild.getIdLong());
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // Over a window of N messages, the average time between each message and the last post is about N/2 intervals
+            var registration = registrations.get(guild.getIdLong());
+            if (registration == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            var duration = Duration.ofMillis((long) (intervalMillis * MessageRate.SPAN / 2 / registration.frequency));
+            if (lastPostedTime.plus(duration).isBefore(OffsetDateTime.now())) {
+                nextDueTimes.remove(guild.getIdLong());
+                return triggerThinkerImmediate(guild, webhook);
+            } else {
+                LOGGER.debug("The next Thinker for {} will be triggered around {}", guild, lastPostedTime.plus(duration));
+                nextDueTimes.put(guild.getIdLong(), lastPostedTime.plus(duration));
+                return CompletableFuture.completedFuture(null);
+            }
         }
     }
 
     private CompletableFuture<ReadonlyMessage> triggerThinkerImmediate(Guild guild, Webhook webhook) {
-        try (var client = WebhookClientBuilder.fromJDA(webhook).buildJDA()) {
-            return retrieveRandomMessage(guild).thenCompose(message -> client.send(message).whenComplete((readonlyMessage, throwable) -> {
-                //If there was no error, remember the time we sent the message
-                if (throwable == null) {
-                    lastPostedTimes.put(webhook.getIdLong(), OffsetDateTime.now());
-                } else {
-                    LOGGER.error("Exception encountered while sending Thinker message", throwable);
+        return nextThought(guild).thenCompose(message -> webhookClientPool.get(webhook).send(message).whenComplete((readonlyMessage, throwable) -> {
+            //If there was no error, remember the time we sent the message
+            if (throwable == null) {
+                lastPostedTimes.put(webhook.getIdLong(), OffsetDateTime.now());
+            } else {
+                LOGGER.error("Exception encountered while sending Thinker message", throwable);
+                //The webhook might have been deleted or moved, resolve it again next time
+                webhookClientPool.invalidate(webhook.getIdLong());
+                var registration = registrations.get(guild.getIdLong());
+                if (registration != null) {
+                    registration.invalidateWebhook();
                 }
+            }
+        }));
+    }
 
-                //And finally, close the client
-                client.close();
-            }));
+    /**
+     * Takes the next thought of a guild's prefetch buffer and turns it into a message, which usually doesn't need any
+     * request. Thoughts saved before their content was stored are fetched once and then stored. Either way, thoughts
+     * never ping anyone.
+     */
+    private CompletableFuture<WebhookMessage> nextThought(Guild guild) {
+        if (!storeContents) {
+            // fromJDA copies the original message's mention whitelist, which would let its mentions ping again
+            return retrieveRandomMessage(guild).thenApply(message -> WebhookMessageBuilder.fromJDA(message).setAllowedMentions(AllowedMentions.none()).build());
+        }
+        return nextThought(guild, 1);
+    }
+
+    private CompletableFuture<WebhookMessage> nextThought(Guild guild, int attempt) {
+        long guildId = guild.getIdLong();
+        var next = pollPrefetchedThought(guildId);
+        var prepared = next != null ? CompletableFuture.completedFuture(next) : CompletableFuture.supplyAsync(() -> {
+            prefetchThoughts(guildId);
+            var thought = pollPrefetchedThought(guildId);
+            if (thought == null) {
+                throw new NoSuchElementException("No thoughts stored for " + guild);
+            }
+            return thought;
+        }, executor);
+        executor.execute(() -> prefetchThoughts(guildId));
+
+        return prepared.thenCompose(thought -> {
+            if (thought.content() != null) {
+                return CompletableFuture.completedFuture(thought.content().toWebhookMessage());
+            }
+            return retrieveThought(guild, thought.thought()).thenApply(message -> {
+                var content = ThoughtContent.of(message);
+                thoughtWriter.updateContent(guildId, message.getChannel().getIdLong(), message.getAuthor().getIdLong(), message.getIdLong(), content);
+                return content.toWebhookMessage();
+            });
+        }).exceptionallyCompose(throwable -> isDeadThought(throwable) && attempt < MAX_RESOLVE_ATTEMPTS
+                ? nextThought(guild, attempt + 1)
+                : CompletableFuture.failedFuture(throwable));
+    }
+
+    @Nullable
+    private PreparedThought pollPrefetchedThought(long guildId) {
+        var queue = prefetchedThoughts.get(guildId);
+        if (queue == null) {
+            return null;
+        }
+
+        // skip thoughts that were deleted after they were prefetched
+        var index = getThoughtIndex(guildId);
+        PreparedThought thought;
+        do {
+            thought = queue.poll();
+        } while (thought != null && !index.contains(thought.thought().messageId()));
+        return thought;
+    }
+
+    /**
+     * Tops up a guild's prefetch buffer with random thoughts and their stored contents, all in one query. Only runs on
+     * the executor so that buffers aren't filled twice.
+     */
+    private void prefetchThoughts(long guildId) {
+        var queue = prefetchedThoughts.get(guildId);
+        if (queue == null) {
+            prefetchedThoughts.putIfAbsent(guildId, new ConcurrentLinkedQueue<>());
+            queue = prefetchedThoughts.get(guildId);
+        }
+
+        var index = getThoughtIndex(guildId);
+        Map<Long, Thought> candidates = new LinkedHashMap<>();
+        for (int i = queue.size(); i < prefetch; i++) {
+            var thought = index.random(ThreadLocalRandom.current());
+            if (thought == null) {
+                return;
+            }
+            candidates.putIfAbsent(thought.messageId(), thought);
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        Map<Long, ThoughtContent> contents = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT `message_id`, `content`, `attachment_urls` FROM `thought_contents` WHERE `message_id` IN (" + String.join(", ", Collections.nCopies(candidates.size(), "?")) + ")",
+                (RowCallbackHandler) rs -> contents.put(rs.getLong("message_id"), new ThoughtContent(rs.getString("content"), ThoughtContent.splitAttachmentUrls(rs.getString("attachment_urls")))),
+                candidates.keySet().toArray()
+        );
+        for (var thought : candidates.values()) {
+            queue.add(new PreparedThought(thought, contents.get(thought.messageId())));
         }
     }
 
     @Override
     public CompletableFuture<Message> retrieveRandomMessage(Guild guild) {
-        return jdbcTemplate.queryForObject(
-                "SELECT `channel_id`, `message_id` FROM `thoughts` WHERE `guild_id` = ? ORDER BY RAND() LIMIT 1",
-                (rs, rowNum) -> guild.getJDA().getTextChannelById(rs.getLong("channel_id")).retrieveMessageById(rs.getLong("message_id")).submit(),
-                guild.getIdLong()
-        );
+        return retrieveRandomMessage(guild, 1);
+    }
+
+    private CompletableFuture<Message> retrieveRandomMessage(Guild guild, int attempt) {
+        var thought = getThoughtIndex(guild.getIdLong()).random(ThreadLocalRandom.current());
+        if (thought == null) {
+            return CompletableFuture.failedFuture(new NoSuchElementException("No thoughts stored for " + guild));
+        }
+        return retrieveThought(guild, thought).exceptionallyCompose(throwable -> isDeadThought(throwable) && attempt < MAX_RESOLVE_ATTEMPTS
+                ? retrieveRandomMessage(guild, attempt + 1)
+                : CompletableFuture.failedFuture(throwable));
+    }
+
+    /**
+     * Fetches the message of a thought. Thoughts whose message or channel Discord reports as unknown are deleted, the
+     * returned future then fails with a {@link DeadThoughtException} so that the caller can pick another one. Channels
+     * that exist but aren't cached, like archived threads, are parked the same way, which keeps their thoughts.
+     */
+    private CompletableFuture<Message> retrieveThought(Guild guild, Thought thought) {
+        var channel = guild.getChannelById(GuildMessageChannel.class, thought.channelId());
+        if (channel == null) {
+            return ChannelProbe.exists(jda, thought.channelId()).thenCompose(exists -> {
+                if (exists) {
+                    LOGGER.debug("Parking thoughts of uncached channel {} in {}", thought.channelId(), guild);
+                    parkChannel(guild.getIdLong(), thought.channelId());
+                } else {
+                    LOGGER.debug("Pruning thoughts of unknown channel {} in {}", thought.channelId(), guild);
+                    deleteAllMessagesFromChannel(thought.channelId());
+                }
+                return CompletableFuture.failedFuture(new DeadThoughtException(thought));
+            });
+        }
+
+        return channel.retrieveMessageById(thought.messageId()).submit().exceptionallyCompose(throwable -> {
+            if (throwable instanceof ErrorResponseException e && e.getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE) {
+                LOGGER.debug("Pruning unknown message {} in {}", thought.messageId(), channel);
+                deleteMessage(guild.getIdLong(), thought.messageId());
+                return CompletableFuture.failedFuture(new DeadThoughtException(thought));
+            }
+            if (throwable instanceof ErrorResponseException e && e.getErrorResponse() == ErrorResponse.UNKNOWN_CHANNEL) {
+                LOGGER.debug("Pruning thoughts of unknown channel {}", channel);
+                deleteAllMessagesFromChannel(channel);
+                return CompletableFuture.failedFuture(new DeadThoughtException(thought));
+            }
+            return CompletableFuture.failedFuture(throwable);
+        });
+    }
+
+    private static boolean isDeadThought(Throwable throwable) {
+        return (throwable instanceof CompletionException ? throwable.getCause() : throwable) instanceof DeadThoughtException;
+    }
+
+    @Override
+    public void recordMessage(Message message) {
+        if (registrations.containsKey(message.getGuild().getIdLong())) {
+            var rate = messageRates.get(message.getChannel().getIdLong());
+            if (rate == null) {
+                messageRates.putIfAbsent(message.getChannel().getIdLong(), new MessageRate());
+                rate = messageRates.get(message.getChannel().getIdLong());
+            }
+            rate.record(message.getTimeCreated().toInstant().toEpochMilli());
+            dirtyMessageRates.put(message.getChannel().getIdLong(), rate);
+        }
     }
 
     @Override
     public boolean isValidMessage(Message message) {
-        return message.isFromGuild() && isValidChannel(message.getChannel().asGuildMessageChannel()) && !message.getAuthor().isBot() && !message.isWebhookMessage() && (message.getType() == MessageType.DEFAULT || message.getType() == MessageType.INLINE_REPLY);
+        return message.isFromGuild() && !message.getAuthor().isBot() && !message.isWebhookMessage() && (message.getType() == MessageType.DEFAULT || message.getType() == MessageType.INLINE_REPLY) && isValidChannel(message.getChannel().asGuildMessageChannel());
     }
 
+    /**
+     * Eligibility is cached per channel until {@link #invalidateChannelEligibility(Guild)} is called for its guild.
+     */
     @Override
     public boolean isValidChannel(GuildMessageChannel channel) {
-        var override = channel.getPermissionContainer().getPermissionOverride(channel.getGuild().getPublicRole());
-        return override == null || !override.getDenied().contains(Permission.VIEW_CHANNEL);
+        long guildId = channel.getGuild().getIdLong();
+        var channels = eligibleChannels.get(guildId);
+        if (channels == null) {
+            eligibleChannels.putIfAbsent(guildId, new ConcurrentLongMap<>());
+            channels = eligibleChannels.get(guildId);
+        }
+
+        var eligible = channels.get(channel.getIdLong());
+        if (eligible == null) {
+            var override = channel.getPermissionContainer().getPermissionOverride(channel.getGuild().getPublicRole());
+            eligible = override == null || !override.getDenied().contains(Permission.VIEW_CHANNEL);
+            channels.put(channel.getIdLong(), eligible);
+        }
+        return eligible;
     }
 
     @Override
-    public void saveMessage(Message message) {
-        jdbcTemplate.update(
-                "INSERT INTO `thoughts` (`guild_id`, `channel_id`, `user_id`, `message_id`) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE `guild_id` = `guild_id`",
-                message.getGuild().getIdLong(), message.getChannel().getIdLong(), message.getAuthor().getIdLong(), message.getIdLong()
-        );
+    public void invalidateChannelEligibility(Guild guild) {
+        // dropping the whole map also discards entries that are computed concurrently from outdated overrides
+        eligibleChannels.remove(guild.getIdLong());
     }
 
     @Override
-    public void saveAllMessagesInChannel(MessageChannel channel) {
-        channel.getIterableHistory().forEachAsync(value -> {
-            if (isValidMessage(value)) {
-                saveMessage(value);
-            }
-            return true;
-        });
+    public boolean saveMessage(Message message) {
+        // the index mirrors the table, so it knows exactly which messages are stored already
+        var index = getThoughtIndex(message.getGuild().getIdLong());
+        if (!index.add(message.getChannel().getIdLong(), message.getIdLong())) {
+            return false;
+        }
+        if (!thoughtWriter.insert(message.getGuild().getIdLong(), message.getChannel().getIdLong(), message.getAuthor().getIdLong(), message.getIdLong(), storeContents ? ThoughtContent.of(message) : null)) {
+            // the insert was shed, forget the message so that it is stored the next time it is seen
+            index.remove(message.getIdLong());
+            return false;
+        }
+        return true;
     }
 
     @Override
-    public void deleteMessage(long messageId) {
-        jdbcTemplate.update("DELETE FROM `thoughts` WHERE `message_id` = ?", messageId);
+    public void updateMessage(Message message) {
+        if (storeContents && getThoughtIndex(message.getGuild().getIdLong()).contains(message.getIdLong())) {
+            thoughtWriter.updateContent(message.getGuild().getIdLong(), message.getChannel().getIdLong(), message.getAuthor().getIdLong(), message.getIdLong(), ThoughtContent.of(message));
+        }
     }
 
     @Override
-    public void deleteMessages(Collection<Long> messageIds) {
-        jdbcTemplate.update("DELETE FROM `thoughts` WHERE `message_id` IN (:ids)", new MapSqlParameterSource("ids", messageIds));
+    public void deleteMessage(long guildId, long messageId) {
+        thoughtWriter.deleteMessage(messageId);
+        var index = thoughtIndexes.get(guildId);
+        if (index != null) {
+            index.remove(messageId);
+        }
+    }
+
+    @Override
+    public void deleteMessages(long guildId, Collection<Long> messageIds) {
+        messageIds.forEach(thoughtWriter::deleteMessage);
+        var index = thoughtIndexes.get(guildId);
+        if (index != null) {
+            messageIds.forEach(index::remove);
+        }
+    }
+
+    @Override
+    public void deleteAllMessagesFromChannel(long channelId) {
+        thoughtWriter.deleteChannel(channelId);
+        thoughtIndexes.forEach((guildId, index) -> index.removeChannel(channelId));
     }
 
     @Override
     public void deleteAllMessagesFromChannel(Channel channel) {
-        jdbcTemplate.update("DELETE FROM `thoughts` WHERE `channel_id` = ?", channel.getIdLong());
+        thoughtWriter.deleteChannel(channel.getIdLong());
+        if (channel instanceof GuildChannel guildChannel) {
+            getThoughtIndex(guildChannel.getGuild().getIdLong()).removeChannel(channel.getIdLong());
+        } else {
+            thoughtIndexes.forEach((guildId, index) -> index.removeChannel(channel.getIdLong()));
+        }
+    }
+
+    @Override
+    public void parkChannel(long guildId, long channelId) {
+        // only the index forgets the thoughts, so that they are picked up again after a restart
+        parkedChannels.put(channelId, true);
+        getThoughtIndex(guildId).removeChannel(channelId);
+    }
+
+    @Override
+    public boolean isParkedChannel(long channelId) {
+        return parkedChannels.containsKey(channelId);
+    }
+
+    private static final class DeadThoughtException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private DeadThoughtException(Thought thought) {
+            super("Message " + thought.messageId() + " in channel " + thought.channelId() + " doesn't exist anymore", null, false, false);
+        }
+    }
+
+    /**
+     * The chain of checks of one Thinker, each check schedules the next one.
+     */
+    private static final class Check {
+        private final long guildId;
+        private volatile ScheduledFuture<?> future;
+
+        private Check(long guildId) {
+            this.guildId = guildId;
+        }
+
+        private void cancel() {
+            var scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    private record PreparedThought(Thought thought, @Nullable ThoughtContent content) {
     }
 }
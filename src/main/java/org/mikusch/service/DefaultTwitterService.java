@@ -21,9 +21,17 @@ public class DefaultTwitterService implements TwitterService {
 
     @Override
     public List<Status> getAllStatusesForUser(long userId) throws TwitterException {
+        return getStatusesForUserSince(userId, 0);
+    }
+
+    @Override
+    public List<Status> getStatusesForUserSince(long userId, long sinceId) throws TwitterException {
         List<Status> statuses = new ArrayList<>();
 
         var paging = new Paging(1, MAX_STATUSES_PER_PAGE);
+        if (sinceId > 0) {
+            paging.setSinceId(sinceId);
+        }
         while (true) {
             ResponseList<Status> timeline = twitter.getUserTimeline(userId, paging);
             if (timeline.isEmpty()) {
@@ -0,0 +1,57 @@
+package org.mikusch.service;
+
+/**
+ * Streaming estimate of the interval between messages in a channel.
+ * <p>
+ * The estimate is an exponentially weighted moving average with a span of {@value #SPAN} messages, which weighs recent
+ * messages about as much as a plain average over the last {@value #SPAN} messages would.
+ */
+final class MessageRate {
+
+    static final int SPAN = 100;
+    private static final double ALPHA = 2.0 / (SPAN + 1);
+
+    private double intervalMillis;
+    private long lastMessageMillis;
+
+    MessageRate() {
+        this(Double.NaN, 0);
+    }
+
+    MessageRate(double intervalMillis, long lastMessageMillis) {
+        this.intervalMillis = intervalMillis;
+        this.lastMessageMillis = lastMessageMillis;
+    }
+
+    /**
+     * @param timestampMillis the time the message was sent at
+     */
+    synchronized void record(long timestampMillis) {
+        if (lastMessageMillis != 0 && timestampMillis > lastMessageMillis) {
+            long interval = timestampMillis - lastMessageMillis;
+            intervalMillis = Double.isNaN(intervalMillis) ? interval : intervalMillis + ALPHA * (interval - intervalMillis);
+        }
+        lastMessageMillis = Math.max(lastMessageMillis, timestampMillis);
+    }
+
+    /**
+     * @return the estimated interval between messages, or {@link Double#NaN} if there weren't enough messages yet
+     */
+    synchronized double getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * @param nowMillis the current time
+     * @return the estimated interval between messages, at least as long as the channel has been silent, or
+     * {@link Double#NaN} if there weren't enough messages yet
+     */
+    synchronized double getIntervalMillis(long nowMillis) {
+        // the average only moves when a message arrives, without this a silent channel would keep its old rate forever
+        return Double.isNaN(intervalMillis) ? intervalMillis : Math.max(intervalMillis, nowMillis - lastMessageMillis);
+    }
+
+    synchronized long getLastMessageMillis() {
+        return lastMessageMillis;
+    }
+}
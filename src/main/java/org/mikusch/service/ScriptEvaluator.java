@@ -0,0 +1,122 @@
+package org.mikusch.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import groovy.transform.ThreadInterrupt;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Evaluates Groovy scripts on a dedicated executor instead of the calling thread.
+ * <p>
+ * Compiled script classes are kept in an LRU cache keyed by the SHA-256 of their source, so repeated scripts skip the
+ * compiler. Every evaluation is cancelled once it exceeds {@code eclipse.eval.timeout-seconds}, including the time it
+ * spent queued. Scripts are compiled with {@link ThreadInterrupt} so loops notice the cancellation.
+ */
+@Component
+public class ScriptEvaluator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptEvaluator.class);
+
+    private final CompilerConfiguration compilerConfiguration = new CompilerConfiguration();
+    private final Cache<String, Class<? extends Script>> scripts;  // Cache<Source Hash, Script Class>
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("eval-timeout").setDaemon(true).build());
+    private final long timeoutSeconds;
+
+    @Autowired
+    public ScriptEvaluator(@Value("${eclipse.eval.threads}") int threads, @Value("${eclipse.eval.timeout-seconds}") long timeoutSeconds, @Value("${eclipse.eval.cache-size}") long cacheSize) {
+        this.compilerConfiguration.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+        this.scripts = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(threads * 4),
+                new ThreadFactoryBuilder().setNameFormat("eval-%d").setDaemon(true).build());
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * @param source    the script source
+     * @param variables the variables bound in the script
+     * @return the evaluation, fails with a {@link TimeoutException} if the script took too long or a
+     * {@link RejectedExecutionException} if too many scripts are already queued
+     */
+    @Nonnull
+    public CompletableFuture<Evaluation> evaluate(@Nonnull String source, @Nonnull Map<String, Object> variables) {
+        var result = new CompletableFuture<Evaluation>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    result.complete(run(source, variables));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        var timeout = timeouts.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("Evaluation exceeded " + timeoutSeconds + " seconds"))) {
+                task.cancel(true);
+            }
+        }, timeoutSeconds, TimeUnit.SECONDS);
+        result.whenComplete((evaluation, throwable) -> timeout.cancel(false));
+        return result;
+    }
+
+    private Evaluation run(String source, Map<String, Object> variables) {
+        long startNanos = System.nanoTime();
+        String hash = Hashing.sha256().hashString(source, StandardCharsets.UTF_8).toString();
+        var scriptClass = scripts.getIfPresent(hash);
+        boolean cached = scriptClass != null;
+        if (!cached) {
+            // A class loader per script so evicted classes can be unloaded
+            Class<?> parsed = new GroovyClassLoader(getClass().getClassLoader(), compilerConfiguration)
+                    .parseClass(source, "Script_" + hash.substring(0, 16) + ".groovy");
+            scriptClass = parsed.asSubclass(Script.class);
+            scripts.put(hash, scriptClass);
+        }
+        long compiledNanos = System.nanoTime();
+
+        var binding = new Binding();
+        variables.forEach(binding::setProperty);
+        Object value = InvokerHelper.createScript(scriptClass, binding).run();
+        long finishedNanos = System.nanoTime();
+        LOG.debug("Evaluated script {} (cached: {}) in {} ms", hash, cached, TimeUnit.NANOSECONDS.toMillis(finishedNanos - startNanos));
+        return new Evaluation(value, cached, compiledNanos - startNanos, finishedNanos - compiledNanos);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        timeouts.shutdownNow();
+    }
+
+    /**
+     * @param value          the value the script returned
+     * @param cached         whether the compiled script was taken from the cache
+     * @param compileNanos   the time spent looking up or compiling the script
+     * @param executionNanos the time spent running the script
+     */
+    public record Evaluation(@Nullable Object value, boolean cached, long compileNanos, long executionNanos) {
+    }
+}
@@ -0,0 +1,64 @@
+package org.mikusch.service;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Webhook;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cached row of the {@code thinkers} table together with the resolved webhook.
+ */
+final class ThinkerRegistration {
+
+    final long guildId;
+    final long webhookId;
+    final double frequency;
+    private volatile CompletableFuture<Webhook> webhook;
+
+    ThinkerRegistration(long guildId, long webhookId, double frequency) {
+        this.guildId = guildId;
+        this.webhookId = webhookId;
+        this.frequency = frequency;
+    }
+
+    /**
+     * Resolves the webhook, only the first call and calls after a failure or {@link #invalidateWebhook()} make a REST
+     * request.
+     *
+     * @param jda the JDA instance
+     * @return the webhook
+     */
+    @Nonnull
+    CompletableFuture<Webhook> getWebhook(JDA jda) {
+        var current = webhook;
+        if (current == null || current.isCompletedExceptionally()) {
+            current = jda.retrieveWebhookById(webhookId).submit();
+            webhook = current;
+        }
+        return current;
+    }
+
+    /**
+     * Adopts the resolved webhook of a previous registration for the same webhook.
+     *
+     * @param previous the previous registration
+     */
+    void inheritWebhook(@Nonnull ThinkerRegistration previous) {
+        if (previous.webhookId == webhookId) {
+            webhook = previous.webhook;
+        }
+    }
+
+    void invalidateWebhook() {
+        webhook = null;
+    }
+
+    /**
+     * @return the ID of the channel the webhook posts in, or {@code 0} if the webhook isn't resolved yet
+     */
+    long getChannelId() {
+        var current = webhook;
+        return current != null && current.isDone() && !current.isCompletedExceptionally() ? current.join().getChannel().getIdLong() : 0;
+    }
+}
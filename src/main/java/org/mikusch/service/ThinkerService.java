@@ -10,8 +10,12 @@ public interface ThinkerService {
 
     CompletableFuture<Webhook> getThinker(Guild guild);
 
+    boolean hasThinker(Guild guild);
+
     Double getFrequency(Guild guild);
 
+    void invalidateThinkerWebhooks(Channel channel);
+
     CompletableFuture<ReadonlyMessage> triggerThinker(Guild guild);
 
     CompletableFuture<ReadonlyMessage> triggerThinker(Guild guild, boolean immediate);
@@ -22,17 +26,55 @@ public interface ThinkerService {
 
     CompletableFuture<Message> retrieveRandomMessage(Guild guild);
 
+    void recordMessage(Message message);
+
     boolean isValidMessage(Message message);
 
     boolean isValidChannel(GuildMessageChannel channel);
 
-    void saveMessage(Message message);
+    /**
+     * Forgets which channels of a guild are eligible for thoughts, needs to be called whenever permission overrides
+     * or channels of the guild change.
+     *
+     * @param guild the guild
+     */
+    void invalidateChannelEligibility(Guild guild);
 
-    void saveAllMessagesInChannel(MessageChannel channel);
+    /**
+     * Stores a message as a thought, messages that are already stored are skipped without touching the database.
+     *
+     * @param message the message
+     * @return {@code true} if the message wasn't stored yet
+     */
+    boolean saveMessage(Message message);
 
-    void deleteMessage(long messageId);
+    /**
+     * Stores the new content of an edited message, if it is stored as a thought.
+     *
+     * @param message the edited message
+     */
+    void updateMessage(Message message);
 
-    void deleteMessages(Collection<Long> messageIds);
+    void deleteMessage(long guildId, long messageId);
+
+    void deleteMessages(long guildId, Collection<Long> messageIds);
+
+    void deleteAllMessagesFromChannel(long channelId);
 
     void deleteAllMessagesFromChannel(Channel channel);
+
+    /**
+     * Stops offering the thoughts of a channel that still exists but isn't cached, like an archived thread, so that
+     * picks don't waste attempts on it. The thoughts stay stored and are offered again after a restart.
+     *
+     * @param guildId   the guild ID
+     * @param channelId the channel ID
+     */
+    void parkChannel(long guildId, long channelId);
+
+    /**
+     * @param channelId the channel ID
+     * @return whether the channel was parked with {@link #parkChannel(long, long)}
+     */
+    boolean isParkedChannel(long channelId);
 }
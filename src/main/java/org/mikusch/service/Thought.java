@@ -0,0 +1,10 @@
+package org.mikusch.service;
+
+/**
+ * Reference to a stored message the Thinker can post.
+ *
+ * @param channelId the ID of the channel the message was sent in
+ * @param messageId the message ID
+ */
+public record Thought(long channelId, long messageId) {
+}
@@ -0,0 +1,66 @@
+package org.mikusch.service;
+
+import club.minnced.discord.webhook.send.AllowedMentions;
+import club.minnced.discord.webhook.send.WebhookMessage;
+import club.minnced.discord.webhook.send.WebhookMessageBuilder;
+import net.dv8tion.jda.api.entities.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Snapshot of a stored message, enough to post it as a Thinker without fetching the original message.
+ *
+ * @param content        the raw content
+ * @param attachmentUrls the URLs of the message's attachments
+ */
+public record ThoughtContent(String content, List<String> attachmentUrls) {
+
+    private static final int MAX_CONTENT_LENGTH = 2000;
+
+    @Nonnull
+    public static ThoughtContent of(@Nonnull Message message) {
+        return new ThoughtContent(message.getContentRaw(), message.getAttachments().stream().map(Message.Attachment::getUrl).toList());
+    }
+
+    /**
+     * @param attachmentUrls the attachment URLs as stored by {@link #joinAttachmentUrls()}
+     * @return the attachment URLs
+     */
+    @Nonnull
+    static List<String> splitAttachmentUrls(@Nullable String attachmentUrls) {
+        return attachmentUrls == null || attachmentUrls.isEmpty() ? List.of() : Arrays.asList(attachmentUrls.split("\n"));
+    }
+
+    @Nonnull
+    String joinAttachmentUrls() {
+        return String.join("\n", attachmentUrls);
+    }
+
+    /**
+     * Builds the message the Thinker posts, under the webhook's own name and avatar like before. Attachments are linked
+     * instead of uploaded again. Thoughts are never from bots or webhooks, so their embeds are link previews, which
+     * Discord generates again for the reposted content.
+     *
+     * @return the webhook message
+     */
+    @Nonnull
+    public WebhookMessage toWebhookMessage() {
+        var text = new StringBuilder(content);
+        for (var url : attachmentUrls) {
+            if (text.length() + url.length() + 1 > MAX_CONTENT_LENGTH) {
+                break;
+            }
+            if (!text.isEmpty()) {
+                text.append('\n');
+            }
+            text.append(url);
+        }
+        return new WebhookMessageBuilder()
+                .setContent(text.toString())
+                .setAllowedMentions(AllowedMentions.none())
+                .build();
+    }
+}
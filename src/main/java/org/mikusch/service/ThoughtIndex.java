@@ -0,0 +1,103 @@
+package org.mikusch.service;
+
+import org.mikusch.util.LongIntHashMap;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * In-memory copy of a guild's rows in the {@code thoughts} table that supports picking a uniformly random thought in
+ * constant time.
+ * <p>
+ * Thoughts are kept in dense parallel arrays. Removing a thought moves the last one into its slot, so the arrays never
+ * have holes and a random slot is always a valid pick.
+ */
+final class ThoughtIndex {
+
+    private final LongIntHashMap positions = new LongIntHashMap(-1);   // Map<Message ID, Slot>
+    private long[] messageIds = new long[16];
+    private long[] channelIds = new long[16];
+    private int size;
+
+    /**
+     * @param channelId the channel ID
+     * @param messageId the message ID
+     * @return {@code true} if the thought was not indexed yet
+     */
+    synchronized boolean add(long channelId, long messageId) {
+        if (positions.containsKey(messageId)) {
+            return false;
+        }
+
+        if (size == messageIds.length) {
+            messageIds = Arrays.copyOf(messageIds, size << 1);
+            channelIds = Arrays.copyOf(channelIds, size << 1);
+        }
+        messageIds[size] = messageId;
+        channelIds[size] = channelId;
+        positions.put(messageId, size++);
+        return true;
+    }
+
+    /**
+     * @param messageId the message ID
+     * @return {@code true} if the thought was indexed
+     */
+    synchronized boolean remove(long messageId) {
+        int slot = positions.remove(messageId);
+        if (slot < 0) {
+            return false;
+        }
+
+        removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * @param channelId the channel ID
+     * @return the number of removed thoughts
+     */
+    synchronized int removeChannel(long channelId) {
+        int removed = 0;
+        for (int slot = size - 1; slot >= 0; slot--) {
+            if (channelIds[slot] == channelId) {
+                positions.remove(messageIds[slot]);
+                removeSlot(slot);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    synchronized boolean contains(long messageId) {
+        return positions.containsKey(messageId);
+    }
+
+    /**
+     * @param random the source of randomness
+     * @return a uniformly random thought, or {@code null} if there are none
+     */
+    @Nullable
+    synchronized Thought random(Random random) {
+        if (size == 0) {
+            return null;
+        }
+
+        int slot = random.nextInt(size);
+        return new Thought(channelIds[slot], messageIds[slot]);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void removeSlot(int slot) {
+        int last = --size;
+        if (slot != last) {
+            messageIds[slot] = messageIds[last];
+            channelIds[slot] = channelIds[last];
+            positions.put(messageIds[slot], slot);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.mikusch.service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.GuildMessageChannel;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageHistory;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import org.mikusch.GatewayRequirements;
+import org.mikusch.util.ConcurrentLongMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans the message history of channels and stores every valid message as a thought.
+ * <p>
+ * Scans walk from the newest to the oldest message, one page of {@value #PAGE_SIZE} messages per REST request.
+ * All scans share a budget of REST requests per minute so that they can't starve the rest of the bot.
+ * After every page the oldest scanned message is checkpointed, scans that were interrupted by a restart or gave up
+ * after repeated REST errors resume from there. Failed requests are retried with exponential backoff.
+ * <p>
+ * A finished scan remembers the newest message it started from. Rescans stop as soon as they are past that message and
+ * hit a page without any message that isn't stored yet, since everything older was stored by the previous scan.
+ */
+@Component
+@GatewayRequirements(intents = GatewayIntent.MESSAGE_CONTENT)
+public class ThoughtScanner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThoughtScanner.class);
+    private static final int PAGE_SIZE = 100;
+    private static final long BUDGET_RETRY_MILLIS = 500;
+    private static final int MAX_RETRIES = 5;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final ConcurrentLongMap<ScanJob> jobs = new ConcurrentLongMap<>();  // Map<Channel ID, Job>
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final RateLimiter budget;
+
+    private final ThinkerService thinkerService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public ThoughtScanner(ThinkerService thinkerService, JdbcTemplate jdbcTemplate, JDA jda, @Value("${eclipse.thinker.scan.requests-per-minute}") double requestsPerMinute) {
+        this.thinkerService = thinkerService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.budget = RateLimiter.create(requestsPerMinute / 60);
+
+        // resume scans that were interrupted by a restart
+        jdbcTemplate.query("SELECT `channel_id`, `guild_id`, `newest_message_id`, `last_message_id`, `scanned`, `saved` FROM `thinker_scans`", (RowCallbackHandler) rs -> {
+            var channel = jda.getChannelById(GuildMessageChannel.class, rs.getLong("channel_id"));
+            if (channel != null) {
+                var job = new ScanJob(channel, null, rs.getLong("newest_message_id"), rs.getLong("last_message_id"), rs.getInt("scanned"), rs.getInt("saved"));
+                jobs.put(channel.getIdLong(), job);
+                executor.execute(() -> step(job));
+            } else {
+                jdbcTemplate.update("DELETE FROM `thinker_scans` WHERE `channel_id` = ?", rs.getLong("channel_id"));
+            }
+        });
+        if (!jobs.isEmpty()) {
+            LOG.info("Resuming {} channel scans", jobs.size());
+        }
+    }
+
+    /**
+     * Starts scanning a channel, or resumes an interrupted scan of it. The checkpoint is looked up on the scanner's
+     * thread, so this can be called from JDA's callbacks.
+     *
+     * @param channel the channel to scan
+     * @param hook    the hook to report progress to, may be {@code null}
+     * @return {@code false} if the channel is already being scanned
+     */
+    public boolean scan(@Nonnull GuildMessageChannel channel, @Nullable InteractionHook hook) {
+        var job = new ScanJob(channel, hook, 0, 0, 0, 0);
+        if (jobs.putIfAbsent(channel.getIdLong(), job) != null) {
+            return false;
+        }
+
+        executor.execute(() -> {
+            try {
+                restoreCheckpoint(job);
+            } catch (Exception e) {
+                jobs.remove(channel.getIdLong(), job);
+                LOG.error("Failed to look up the checkpoint of {}", channel, e);
+                report(job, "Failed to start scanning " + channel.getAsMention() + ", try again later.");
+                return;
+            }
+            step(job);
+        });
+        return true;
+    }
+
+    private void restoreCheckpoint(ScanJob job) {
+        jdbcTemplate.query("SELECT `newest_message_id`, `last_message_id`, `scanned`, `saved` FROM `thinker_scans` WHERE `channel_id` = ?", (RowCallbackHandler) rs -> {
+            job.newestMessageId = rs.getLong("newest_message_id");
+            job.lastMessageId = rs.getLong("last_message_id");
+            job.initialScanned = rs.getInt("scanned");
+            job.scanned = job.initialScanned;
+            job.saved = rs.getInt("saved");
+        }, job.channel.getIdLong());
+    }
+
+    private long getPreviouslyScannedMessageId(long channelId) {
+        var ids = jdbcTemplate.queryForList("SELECT `newest_message_id` FROM `thinker_scanned_channels` WHERE `channel_id` = ?", Long.class, channelId);
+        return ids.isEmpty() ? 0 : ids.get(0);
+    }
+
+    private void step(ScanJob job) {
+        if (!budget.tryAcquire()) {
+            executor.schedule(() -> step(job), BUDGET_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        var page = job.lastMessageId == 0
+                ? job.channel.getHistory().retrievePast(PAGE_SIZE)
+                : job.channel.getHistoryBefore(job.lastMessageId, PAGE_SIZE).map(MessageHistory::getRetrievedHistory);
+        page.queue(messages -> executor.execute(() -> onPage(job, messages)), throwable -> executor.execute(() -> onFailure(job, throwable)));
+    }
+
+    private void onFailure(ScanJob job, Throwable throwable) {
+        if (++job.failures <= MAX_RETRIES) {
+            long delaySeconds = 1L << job.failures;
+            LOG.warn("Failed to scan {} after {} messages, retrying in {} seconds", job.channel, job.scanned, delaySeconds, throwable);
+            executor.schedule(() -> step(job), delaySeconds, TimeUnit.SECONDS);
+            return;
+        }
+
+        // keep the checkpoint, the scan resumes from there after a restart or when the channel is scanned again
+        jobs.remove(job.channel.getIdLong(), job);
+        LOG.error("Failed to scan {}, pausing after {} messages", job.channel, job.scanned, throwable);
+        report(job, "Failed to scan " + job.channel.getAsMention() + ", paused after " + job.describeProgress() + ". Scan the channel again to resume.");
+    }
+
+    private void onPage(ScanJob job, List<Message> messages) {
+        job.failures = 0;
+        if (job.previouslyScannedMessageId < 0) {
+            job.previouslyScannedMessageId = getPreviouslyScannedMessageId(job.channel.getIdLong());
+            if (job.newestMessageId == 0 && !messages.isEmpty()) {
+                job.newestMessageId = messages.get(0).getIdLong();
+            }
+        }
+
+        int saved = 0;
+        for (var message : messages) {
+            if (thinkerService.isValidMessage(message) && thinkerService.saveMessage(message)) {
+                saved++;
+            }
+        }
+        job.saved += saved;
+        job.scanned += messages.size();
+
+        if (messages.size() < PAGE_SIZE) {
+            complete(job, "Finished scanning " + job.channel.getAsMention() + ": " + job.describeProgress());
+            return;
+        }
+
+        job.lastMessageId = messages.get(messages.size() - 1).getIdLong();
+        if (saved == 0 && job.lastMessageId <= job.previouslyScannedMessageId) {
+            complete(job, "Finished scanning " + job.channel.getAsMention() + ", the rest was stored by a previous scan: " + job.describeProgress());
+            return;
+        }
+
+        jdbcTemplate.update(
+                "INSERT INTO `thinker_scans` (`channel_id`, `guild_id`, `newest_message_id`, `last_message_id`, `scanned`, `saved`) VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE `last_message_id` = VALUES(`last_message_id`), `scanned` = VALUES(`scanned`), `saved` = VALUES(`saved`)",
+                job.channel.getIdLong(), job.channel.getGuild().getIdLong(), job.newestMessageId, job.lastMessageId, job.scanned, job.saved
+        );
+
+        long now = System.nanoTime();
+        if (now - job.lastReportNanos >= PROGRESS_INTERVAL_NANOS) {
+            job.lastReportNanos = now;
+            report(job, "Scanning " + job.channel.getAsMention() + ": " + job.describeProgress());
+        }
+        step(job);
+    }
+
+    /**
+     * Ends a scan that reached the end of the history or the boundary of a previous complete scan. Only then is the
+     * newest message of the scan recorded as the new boundary, everything older than it is stored.
+     */
+    private void complete(ScanJob job, String summary) {
+        if (job.newestMessageId != 0) {
+            jdbcTemplate.update(
+                    "INSERT INTO `thinker_scanned_channels` (`channel_id`, `newest_message_id`) VALUES (?, ?) ON DUPLICATE KEY UPDATE `newest_message_id` = GREATEST(`newest_message_id`, VALUES(`newest_message_id`))",
+                    job.channel.getIdLong(), job.newestMessageId
+            );
+        }
+        jdbcTemplate.update("DELETE FROM `thinker_scans` WHERE `channel_id` = ?", job.channel.getIdLong());
+        jobs.remove(job.channel.getIdLong(), job);
+        LOG.info(summary);
+        report(job, summary);
+    }
+
+    private void report(ScanJob job, String progress) {
+        var hook = job.hook;
+        if (hook != null) {
+            // interaction hooks expire after 15 minutes, after that we can only log
+            hook.editOriginal(progress).queue(null, throwable -> job.hook = null);
+        }
+    }
+
+    private static final class ScanJob {
+        private final GuildMessageChannel channel;
+        private final long startNanos = System.nanoTime();
+        private int initialScanned;
+        private volatile InteractionHook hook;
+        private long newestMessageId;
+        private long previouslyScannedMessageId = -1;
+        private long lastMessageId;
+        private int scanned;
+        private int saved;
+        private long lastReportNanos = startNanos;
+        private int failures;
+
+        private ScanJob(GuildMessageChannel channel, @Nullable InteractionHook hook, long newestMessageId, long lastMessageId, int scanned, int saved) {
+            this.channel = channel;
+            this.hook = hook;
+            this.newestMessageId = newestMessageId;
+            this.lastMessageId = lastMessageId;
+            this.initialScanned = scanned;
+            this.scanned = scanned;
+            this.saved = saved;
+        }
+
+        private String describeProgress() {
+            double seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+            return String.format("%,d messages scanned, %,d saved (%.0f messages/s)", scanned, saved, (scanned - initialScanned) / seconds);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.mikusch.service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.GuildMessageChannel;
+import net.dv8tion.jda.api.entities.ISnowflake;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import org.mikusch.util.ChannelProbe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Slowly walks the {@code thoughts} table in the background and deletes thoughts whose message or channel doesn't exist
+ * anymore, e.g. because it was deleted while the bot was offline.
+ * <p>
+ * Rows are read in batches of {@value #BATCH_SIZE} by message ID. The thoughts of a channel are checked by fetching the
+ * channel's history after the oldest unchecked one, so a single request verifies every thought among the next
+ * {@value #BATCH_SIZE} messages. Requests are limited by {@code eclipse.thinker.verify.requests-per-minute}.
+ * <p>
+ * Thoughts are only deleted after Discord answered that their message or channel is unknown. Thoughts of unavailable
+ * guilds are skipped, channels that aren't cached are looked up first. Those that still exist, like archived threads,
+ * can't be read and are parked with {@link ThinkerService#parkChannel(long, long)} instead, which also spares them the
+ * lookup on later passes.
+ */
+@Component
+public class ThoughtVerifier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThoughtVerifier.class);
+    private static final int BATCH_SIZE = 100;
+    private static final long START_DELAY_MINUTES = 5;
+    private static final long BATCH_DELAY_SECONDS = 10;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("thought-verifier").setDaemon(true).build());
+    private final RateLimiter budget;
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong dead = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private long cursor;
+    private long passVerified;
+    private long passDead;
+    private long passSkipped;
+
+    private final ThinkerService thinkerService;
+    private final JdbcTemplate jdbcTemplate;
+    private final JDA jda;
+
+    @Autowired
+    public ThoughtVerifier(ThinkerService thinkerService, JdbcTemplate jdbcTemplate, JDA jda, @Value("${eclipse.thinker.verify.requests-per-minute}") double requestsPerMinute) {
+        this.thinkerService = thinkerService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.jda = jda;
+        this.budget = RateLimiter.create(requestsPerMinute / 60);
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                verifyBatch();
+            } catch (Exception e) {
+                LOG.error("Failed to verify thoughts after message {}", cursor, e);
+            }
+        }, TimeUnit.MINUTES.toSeconds(START_DELAY_MINUTES), BATCH_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void verifyBatch() {
+        Map<Long, TreeSet<Long>> batch = new HashMap<>();    // Map<Channel ID, Message IDs>
+        Map<Long, Long> guildIds = new HashMap<>();    // Map<Channel ID, Guild ID>
+        long[] last = {cursor};
+        int[] rows = {0};
+        jdbcTemplate.query("SELECT `guild_id`, `channel_id`, `message_id` FROM `thoughts` WHERE `message_id` > ? ORDER BY `message_id` LIMIT " + BATCH_SIZE, (RowCallbackHandler) rs -> {
+            batch.computeIfAbsent(rs.getLong("channel_id"), channelId -> new TreeSet<>()).add(rs.getLong("message_id"));
+            guildIds.put(rs.getLong("channel_id"), rs.getLong("guild_id"));
+            last[0] = rs.getLong("message_id");
+            rows[0]++;
+        }, cursor);
+
+        batch.forEach((channelId, messageIds) -> verifyChannel(guildIds.get(channelId), channelId, messageIds));
+        cursor = last[0];
+
+        if (rows[0] < BATCH_SIZE) {
+            LOG.info("Verified {} thoughts, pruned {} dead ones, skipped {} in unreadable channels", passVerified, passDead, passSkipped);
+            cursor = 0;
+            passVerified = 0;
+            passDead = 0;
+            passSkipped = 0;
+        }
+    }
+
+    private void verifyChannel(long guildId, long channelId, TreeSet<Long> messageIds) {
+        var guild = jda.getGuildById(guildId);
+        if (guild == null || jda.isUnavailable(guildId)) {
+            LOG.debug("Skipping thoughts of channel {} in unavailable guild {}", channelId, guildId);
+            return;
+        }
+
+        var channel = guild.getChannelById(GuildMessageChannel.class, channelId);
+        if (channel == null) {
+            if (thinkerService.isParkedChannel(channelId)) {
+                skip(messageIds.size());
+                return;
+            }
+            budget.acquire();
+            try {
+                if (ChannelProbe.exists(jda, channelId).join()) {
+                    LOG.debug("Parking thoughts of uncached channel {}", channelId);
+                    thinkerService.parkChannel(guildId, channelId);
+                    skip(messageIds.size());
+                } else {
+                    LOG.debug("Pruning thoughts of unknown channel {}", channelId);
+                    thinkerService.deleteAllMessagesFromChannel(channelId);
+                    count(messageIds.size(), messageIds.size());
+                }
+            } catch (CompletionException e) {
+                LOG.warn("Could not look up channel {}: {}", channelId, e.getCause().toString());
+            }
+            return;
+        }
+
+        while (!messageIds.isEmpty()) {
+            budget.acquire();
+            List<Long> page;
+            try {
+                page = channel.getHistoryAfter(messageIds.first() - 1, BATCH_SIZE).complete().getRetrievedHistory().stream().map(ISnowflake::getIdLong).toList();
+            } catch (ErrorResponseException e) {
+                if (e.getErrorResponse() == ErrorResponse.UNKNOWN_CHANNEL) {
+                    thinkerService.deleteAllMessagesFromChannel(channel);
+                    count(messageIds.size(), messageIds.size());
+                } else {
+                    LOG.warn("Could not verify thoughts in {}: {}", channel, e.getMeaning());
+                }
+                return;
+            }
+
+            // a short page reaches the newest message, so it covers every remaining thought
+            var existing = new HashSet<>(page);
+            long covered = page.size() < BATCH_SIZE ? Long.MAX_VALUE : Collections.max(page);
+            var checked = messageIds.headSet(covered, true);
+            var missing = checked.stream().filter(messageId -> !existing.contains(messageId)).collect(Collectors.toList());
+            if (!missing.isEmpty()) {
+                LOG.debug("Pruning {} unknown messages in {}", missing.size(), channel);
+                thinkerService.deleteMessages(guildId, missing);
+            }
+            count(checked.size(), missing.size());
+            checked.clear();
+        }
+    }
+
+    private void count(int verifiedCount, int deadCount) {
+        verified.addAndGet(verifiedCount);
+        dead.addAndGet(deadCount);
+        passVerified += verifiedCount;
+        passDead += deadCount;
+    }
+
+    private void skip(int skippedCount) {
+        skipped.addAndGet(skippedCount);
+        passSkipped += skippedCount;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public long getVerifiedCount() {
+        return verified.get();
+    }
+
+    /**
+     * @return the number of thoughts that were pruned because their message or channel doesn't exist anymore
+     */
+    public long getDeadCount() {
+        return dead.get();
+    }
+
+    /**
+     * @return the number of thoughts that couldn't be verified because their channel exists but isn't cached
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+}
@@ -0,0 +1,335 @@
+package org.mikusch.service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous write-behind buffer for the {@code thoughts} and {@code thought_contents} tables.
+ * <p>
+ * Writes are queued and flushed in order by a single background thread, either once {@value #MAX_BATCH_SIZE} writes
+ * have accumulated or {@value #MAX_DELAY_MILLIS} milliseconds after the first one. Consecutive inserts are combined into
+ * multi-row inserts and consecutive deletes into chunked {@code IN} lists. The queue is bounded, once it is full
+ * writes are shed instead of blocking the caller, which usually is a JDA event thread. Everything still queued is
+ * written on shutdown.
+ * <p>
+ * Batches that fail because the database is unreachable are retried with exponential backoff until they succeed.
+ * Batches that keep failing for other reasons are dropped after {@value #MAX_ATTEMPTS} attempts, the
+ * {@link DroppedInsertListener} is told about every dropped insert of a new thought.
+ */
+@Component
+public class ThoughtWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThoughtWriter.class);
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final long MAX_DELAY_MILLIS = 1000;
+    private static final int QUEUE_CAPACITY = 20_000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MILLIS = 500;
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long STATS_INTERVAL_MINUTES = 10;
+
+    private final BlockingQueue<Write> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("thought-writer").build());
+    private final ScheduledExecutorService statsExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("thought-writer-stats").setDaemon(true).build());
+    private volatile boolean running = true;
+    private volatile DroppedInsertListener droppedInsertListener = (guildId, messageId) -> {
+    };
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final LongAdder flushMillis = new LongAdder();
+    private final AtomicLong maxFlushMillis = new AtomicLong();
+    private final LongAdder shedSubmits = new LongAdder();
+    private final RateLimiter shedWarnings = RateLimiter.create(1);
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder droppedWrites = new LongAdder();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public ThoughtWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        executor.execute(this::run);
+        statsExecutor.scheduleAtFixedRate(() -> {
+            try {
+                LOG.info("{} batches flushed (avg. {} writes, max. {}) in avg. {} ms (max. {} ms), {} queued, {} shed, {} retries, {} dropped",
+                        getBatchCount(), String.format("%.1f", getAverageBatchSize()), getMaxBatchSize(), String.format("%.1f", getAverageFlushMillis()),
+                        getMaxFlushMillis(), getQueueSize(), getShedSubmitCount(), getRetryCount(), getDroppedWriteCount());
+            } catch (Exception e) {
+                LOG.error("Failed to log thought writer statistics", e);
+            }
+        }, STATS_INTERVAL_MINUTES, STATS_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stores a new thought.
+     *
+     * @param content the snapshot of the message, or {@code null} to only store the reference to it
+     * @return {@code false} if the insert was shed because the queue is full
+     */
+    public boolean insert(long guildId, long channelId, long userId, long messageId, @Nullable ThoughtContent content) {
+        return submit(new Insert(guildId, channelId, userId, messageId, content, true));
+    }
+
+    /**
+     * Stores the content of a thought that is already stored.
+     */
+    public void updateContent(long guildId, long channelId, long userId, long messageId, ThoughtContent content) {
+        submit(new Insert(guildId, channelId, userId, messageId, content, false));
+    }
+
+    public void setDroppedInsertListener(DroppedInsertListener droppedInsertListener) {
+        this.droppedInsertListener = droppedInsertListener;
+    }
+
+    public void deleteMessage(long messageId) {
+        submit(new DeleteMessage(messageId));
+    }
+
+    public void deleteChannel(long channelId) {
+        submit(new DeleteChannel(channelId));
+    }
+
+    /**
+     * @return the number of flushed batches
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the average number of writes per flushed batch
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) writes.sum() / count;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * @return the average time it took to flush a batch, in milliseconds
+     */
+    public double getAverageFlushMillis() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) flushMillis.sum() / count;
+    }
+
+    public long getMaxFlushMillis() {
+        return maxFlushMillis.get();
+    }
+
+    /**
+     * @return the number of writes that were shed because the queue was full
+     */
+    public long getShedSubmitCount() {
+        return shedSubmits.sum();
+    }
+
+    /**
+     * @return the number of times a failed batch was retried
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the number of writes that were dropped after their batch kept failing
+     */
+    public long getDroppedWriteCount() {
+        return droppedWrites.sum();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        statsExecutor.shutdownNow();
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            LOG.warn("Thought writer did not stop in time, {} writes are still queued", queue.size());
+        }
+    }
+
+    private boolean submit(Write write) {
+        if (queue.offer(write)) {
+            return true;
+        }
+
+        // never stall the event thread, a slow database must not hold up the gateway
+        shedSubmits.increment();
+        if (shedWarnings.tryAcquire()) {
+            LOG.warn("Thought writer queue is full, shedding {} ({} shed so far)", write, shedSubmits.sum());
+        }
+        return false;
+    }
+
+    private void run() {
+        List<Write> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+                while (batch.size() < MAX_BATCH_SIZE && running) {
+                    var next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+
+                flushWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOG.error("Failed to write {} thoughts", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flushWithRetry(List<Write> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                flush(batch);
+                return;
+            } catch (RuntimeException e) {
+                boolean recoverable = e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException || e instanceof DataAccessResourceFailureException;
+                if (!running || (!recoverable && attempt >= MAX_ATTEMPTS)) {
+                    drop(batch, e);
+                    return;
+                }
+
+                long delay = Math.min(MAX_RETRY_DELAY_MILLIS, RETRY_DELAY_MILLIS << Math.min(attempt - 1, 16));
+                retries.increment();
+                LOG.warn("Failed to write {} thoughts, retrying in {} ms", batch.size(), delay, e);
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    private void drop(List<Write> batch, Exception e) {
+        LOG.error("Failed to write {} thoughts, dropping them", batch.size(), e);
+        droppedWrites.add(batch.size());
+        var listener = droppedInsertListener;
+        for (var write : batch) {
+            if (write instanceof Insert insert && insert.added()) {
+                listener.onDropped(insert.guildId(), insert.messageId());
+            }
+        }
+    }
+
+    private void flush(List<Write> batch) {
+        long start = System.nanoTime();
+
+        // keep the order of writes intact by only combining consecutive writes of the same kind
+        int from = 0;
+        for (int i = 1; i <= batch.size(); i++) {
+            if (i == batch.size() || batch.get(i).getClass() != batch.get(from).getClass()) {
+                write(batch.subList(from, i));
+                from = i;
+            }
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        batches.increment();
+        writes.add(batch.size());
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+        flushMillis.add(millis);
+        maxFlushMillis.accumulateAndGet(millis, Math::max);
+        LOG.debug("Flushed {} thought writes in {} ms", batch.size(), millis);
+    }
+
+    private void write(List<Write> run) {
+        if (run.get(0) instanceof Insert) {
+            List<Object> args = new ArrayList<>(run.size() * 4);
+            for (var write : run) {
+                var insert = (Insert) write;
+                Collections.addAll(args, insert.guildId(), insert.channelId(), insert.userId(), insert.messageId());
+            }
+            jdbcTemplate.update(
+                    "INSERT INTO `thoughts` (`guild_id`, `channel_id`, `user_id`, `message_id`) VALUES " + placeholders("(?, ?, ?, ?)", run.size()) + " ON DUPLICATE KEY UPDATE `guild_id` = `guild_id`",
+                    args.toArray()
+            );
+
+            args.clear();
+            for (var write : run) {
+                var insert = (Insert) write;
+                var content = insert.content();
+                if (content != null) {
+                    Collections.addAll(args, insert.messageId(), insert.channelId(), content.content(), content.joinAttachmentUrls());
+                }
+            }
+            if (!args.isEmpty()) {
+                jdbcTemplate.update(
+                        "INSERT INTO `thought_contents` (`message_id`, `channel_id`, `content`, `attachment_urls`) VALUES " + placeholders("(?, ?, ?, ?)", args.size() / 4) + " ON DUPLICATE KEY UPDATE `content` = VALUES(`content`), `attachment_urls` = VALUES(`attachment_urls`)",
+                        args.toArray()
+                );
+            }
+        } else {
+            String column = run.get(0) instanceof DeleteMessage ? "message_id" : "channel_id";
+            Object[] ids = run.stream().map(write -> write instanceof DeleteMessage delete ? delete.messageId() : ((DeleteChannel) write).channelId()).toArray();
+            jdbcTemplate.update("DELETE FROM `thoughts` WHERE `" + column + "` IN (" + placeholders("?", ids.length) + ")", ids);
+            jdbcTemplate.update("DELETE FROM `thought_contents` WHERE `" + column + "` IN (" + placeholders("?", ids.length) + ")", ids);
+            if (run.get(0) instanceof DeleteChannel) {
+                // the channel has to be scanned completely again to restore its thoughts
+                jdbcTemplate.update("DELETE FROM `thinker_scanned_channels` WHERE `channel_id` IN (" + placeholders("?", ids.length) + ")", ids);
+            }
+        }
+    }
+
+    private static String placeholders(String placeholder, int count) {
+        return String.join(", ", Collections.nCopies(count, placeholder));
+    }
+
+    /**
+     * Told about inserts of new thoughts that were never written, so that in-memory state can forget them again.
+     */
+    @FunctionalInterface
+    public interface DroppedInsertListener {
+        void onDropped(long guildId, long messageId);
+    }
+
+    private sealed interface Write permits Insert, DeleteMessage, DeleteChannel {
+    }
+
+    private record Insert(long guildId, long channelId, long userId, long messageId, @Nullable ThoughtContent content, boolean added) implements Write {
+    }
+
+    private record DeleteMessage(long messageId) implements Write {
+    }
+
+    private record DeleteChannel(long channelId) implements Write {
+    }
+}
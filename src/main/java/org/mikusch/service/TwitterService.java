@@ -8,4 +8,11 @@ import java.util.List;
 public interface TwitterService {
 
     List<Status> getAllStatusesForUser(long userId) throws TwitterException;
+
+    /**
+     * @param userId  the user ID
+     * @param sinceId only statuses newer than this status ID are returned, {@code 0} returns all statuses
+     * @return the statuses, newest first
+     */
+    List<Status> getStatusesForUserSince(long userId, long sinceId) throws TwitterException;
 }
@@ -0,0 +1,145 @@
+package org.mikusch.service;
+
+import club.minnced.discord.webhook.WebhookClientBuilder;
+import club.minnced.discord.webhook.external.JDAWebhookClient;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Webhook;
+import org.mikusch.util.ConcurrentLongMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one long-lived {@link JDAWebhookClient} per webhook.
+ * <p>
+ * Every client owns an executor and a rate limit bucket, so building one per message is wasteful. All clients share
+ * the HTTP client of JDA. Clients that weren't used for {@value #IDLE_TIMEOUT_MINUTES} minutes are closed.
+ */
+@Component
+public class WebhookClientPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookClientPool.class);
+    private static final long IDLE_TIMEOUT_MINUTES = 30;
+    private static final long EVICTION_INTERVAL_MINUTES = 1;
+
+    private final ConcurrentLongMap<PooledClient> clients = new ConcurrentLongMap<>();  // Map<Webhook ID, Client>
+    private final AtomicLong creations = new AtomicLong();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("webhook-client-pool").setDaemon(true).build());
+    private final JDA jda;
+    private long creationsAtLastSweep;
+    private volatile long creationsPerMinute;
+
+    @Autowired
+    public WebhookClientPool(JDA jda) {
+        this.jda = jda;
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                sweep();
+            } catch (Exception e) {
+                LOG.error("Failed to evict idle webhook clients", e);
+            }
+        }, EVICTION_INTERVAL_MINUTES, EVICTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Returns the pooled client of a webhook, building one if there is none yet or the webhook's token changed.
+     *
+     * @param webhook the webhook
+     * @return the client
+     */
+    @Nonnull
+    public JDAWebhookClient get(@Nonnull Webhook webhook) {
+        // the timestamp is updated under the map's lock, so that sweep() can't evict a client that is being handed out
+        var pooled = clients.compute(webhook.getIdLong(), (webhookId, current) -> {
+            if (current != null && Objects.equals(current.token, webhook.getToken()) && !current.client.isShutdown()) {
+                current.lastUsedNanos = System.nanoTime();
+                return current;
+            }
+            if (current != null) {
+                current.client.close();
+            }
+            creations.incrementAndGet();
+            var client = WebhookClientBuilder.fromJDA(webhook).setHttpClient(jda.getHttpClient()).setDaemon(true).buildJDA();
+            return new PooledClient(client, webhook.getToken());
+        });
+        return pooled.client;
+    }
+
+    /**
+     * Closes the client of a webhook that was deleted or can't be used anymore.
+     *
+     * @param webhookId the ID of the webhook
+     */
+    public void invalidate(long webhookId) {
+        var pooled = clients.remove(webhookId);
+        if (pooled != null) {
+            pooled.client.close();
+        }
+    }
+
+    private void sweep() {
+        long idleSince = System.nanoTime() - TimeUnit.MINUTES.toNanos(IDLE_TIMEOUT_MINUTES);
+        clients.forEach((webhookId, pooled) -> {
+            if (pooled.lastUsedNanos - idleSince >= 0) {
+                return;
+            }
+            // check again under the map's lock, the client may have been handed out in the meantime
+            boolean[] evicted = {false};
+            clients.compute(webhookId, (id, current) -> {
+                evicted[0] = current == pooled && current.lastUsedNanos - idleSince < 0;
+                return evicted[0] ? null : current;
+            });
+            if (evicted[0]) {
+                pooled.client.close();
+            }
+        });
+
+        long total = creations.get();
+        creationsPerMinute = (total - creationsAtLastSweep) / EVICTION_INTERVAL_MINUTES;
+        creationsAtLastSweep = total;
+        LOG.debug("{} pooled webhook clients, {} created in the last minute", clients.size(), creationsPerMinute);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        clients.forEach((webhookId, pooled) -> pooled.client.close());
+        clients.clear();
+    }
+
+    public int getSize() {
+        return clients.size();
+    }
+
+    public long getCreations() {
+        return creations.get();
+    }
+
+    /**
+     * @return the number of clients built during the last full minute
+     */
+    public long getCreationsPerMinute() {
+        return creationsPerMinute;
+    }
+
+    private static final class PooledClient {
+        private final JDAWebhookClient client;
+        private final String token;
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private PooledClient(JDAWebhookClient client, String token) {
+            this.client = client;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.mikusch.util;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.internal.requests.RestActionImpl;
+import net.dv8tion.jda.internal.requests.Route;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Asks Discord whether a channel that isn't in the JDA cache still exists.
+ * <p>
+ * Missing from the cache doesn't mean deleted: the channel's guild may be unavailable, and archived threads are never
+ * cached. Only Discord's answer is reliable enough to delete anything for.
+ * <p>
+ * JDA has no public way to fetch a channel that isn't cached, so this is built on its internal request classes. Keep
+ * every use of them in here so that a JDA upgrade only has to look at this class.
+ */
+public final class ChannelProbe {
+
+    private ChannelProbe() {
+    }
+
+    /**
+     * @param jda       the JDA instance
+     * @param channelId the channel ID
+     * @return {@code false} if Discord answered that the channel doesn't exist, {@code true} if it answered otherwise,
+     * fails if there was no answer, e.g. because of a server error
+     */
+    @Nonnull
+    public static CompletableFuture<Boolean> exists(@Nonnull JDA jda, long channelId) {
+        var route = Route.Channels.GET_CHANNEL.compile(Long.toUnsignedString(channelId));
+        return new RestActionImpl<Boolean>(jda, route, (response, request) -> true).submit().exceptionallyCompose(throwable -> {
+            var cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause instanceof ErrorResponseException e) {
+                // e.g. missing access to a private thread, which still exists
+                return CompletableFuture.completedFuture(e.getErrorResponse() != ErrorResponse.UNKNOWN_CHANNEL);
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
+    }
+}
@@ -0,0 +1,231 @@
+package org.mikusch.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open-addressing hash map with primitive {@code long} keys, meant for Discord snowflakes.
+ * <p>
+ * Reads are lock-free and never allocate, writes are serialized on the map itself. Keys must not be {@code 0} and
+ * values must not be {@code null}. Removed entries leave a tombstone behind which is cleaned up on the next resize.
+ *
+ * @param <V> the value type
+ */
+public final class ConcurrentLongMap<V> {
+
+    private static final long EMPTY_KEY = 0L;
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile Table<V> table = new Table<>(MIN_CAPACITY);
+    private int size;   // guarded by this
+    private int used;   // slots with a key, including tombstones, guarded by this
+
+    private static int index(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static int capacityFor(int entries) {
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, entries) * 4 - 1) << 1);
+    }
+
+    /**
+     * @param key the key
+     * @return the value for the key, or {@code null} if there is none
+     */
+    @Nullable
+    public V get(long key) {
+        Table<V> t = table;
+        for (int i = index(key, t.mask); ; i = (i + 1) & t.mask) {
+            long k = t.keys.get(i);
+            if (k == key) {
+                return t.values.get(i);
+            } else if (k == EMPTY_KEY) {
+                return null;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key   the key, must not be {@code 0}
+     * @param value the value
+     * @return the previous value, or {@code null} if there was none
+     */
+    @Nullable
+    public synchronized V put(long key, @Nonnull V value) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Key must not be 0");
+        }
+
+        Table<V> t = table;
+        int i = index(key, t.mask);
+        for (long k; (k = t.keys.get(i)) != EMPTY_KEY; i = (i + 1) & t.mask) {
+            if (k == key) {
+                V previous = t.values.getAndSet(i, value);
+                if (previous == null) {
+                    size++;
+                }
+                return previous;
+            }
+        }
+
+        if ((used + 1) * 2 > t.values.length()) {
+            resize(size + 1);
+            return put(key, value);
+        }
+
+        // publish the value before the key so that readers never see a key without its value
+        t.values.set(i, value);
+        t.keys.set(i, key);
+        used++;
+        size++;
+        return null;
+    }
+
+    /**
+     * @param key   the key
+     * @param value the value
+     * @return the current value, or {@code null} if the value was added
+     */
+    @Nullable
+    public synchronized V putIfAbsent(long key, @Nonnull V value) {
+        V current = get(key);
+        return current != null ? current : put(key, value);
+    }
+
+    /**
+     * Atomically replaces the value of a key with the result of a function. The function is called while holding the
+     * write lock, so it should be cheap.
+     *
+     * @param key      the key, must not be {@code 0}
+     * @param function receives the key and the current value or {@code null}, returns the new value or {@code null}
+     *                 to remove the entry
+     * @return the new value, or {@code null} if there is none
+     */
+    @Nullable
+    public synchronized V compute(long key, @Nonnull EntryFunction<V> function) {
+        V current = get(key);
+        V updated = function.apply(key, current);
+        if (updated == null) {
+            if (current != null) {
+                remove(key);
+            }
+        } else if (updated != current) {
+            put(key, updated);
+        }
+        return updated;
+    }
+
+    /**
+     * @param key the key
+     * @return the removed value, or {@code null} if there was none
+     */
+    @Nullable
+    public synchronized V remove(long key) {
+        Table<V> t = table;
+        for (int i = index(key, t.mask); ; i = (i + 1) & t.mask) {
+            long k = t.keys.get(i);
+            if (k == key) {
+                V previous = t.values.getAndSet(i, null);
+                if (previous != null) {
+                    size--;
+                }
+                return previous;
+            } else if (k == EMPTY_KEY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Removes the entry for a key only if it is currently mapped to the given value.
+     *
+     * @param key   the key
+     * @param value the expected value
+     * @return {@code true} if the entry was removed
+     */
+    public synchronized boolean remove(long key, @Nonnull V value) {
+        if (get(key) == value) {
+            remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void clear() {
+        table = new Table<>(MIN_CAPACITY);
+        size = 0;
+        used = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Iterates over a weakly consistent view of all entries.
+     *
+     * @param consumer the consumer to call for every entry
+     */
+    public void forEach(@Nonnull EntryConsumer<? super V> consumer) {
+        Table<V> t = table;
+        for (int i = 0; i < t.values.length(); i++) {
+            long k = t.keys.get(i);
+            V v = t.values.get(i);
+            if (k != EMPTY_KEY && v != null) {
+                consumer.accept(k, v);
+            }
+        }
+    }
+
+    private void resize(int entries) {
+        Table<V> old = table;
+        Table<V> resized = new Table<>(capacityFor(entries));
+        for (int i = 0; i < old.values.length(); i++) {
+            V v = old.values.get(i);
+            if (v != null) {
+                long k = old.keys.get(i);
+                int j = index(k, resized.mask);
+                while (resized.keys.get(j) != EMPTY_KEY) {
+                    j = (j + 1) & resized.mask;
+                }
+                resized.values.set(j, v);
+                resized.keys.set(j, k);
+            }
+        }
+        used = size;
+        table = resized;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    @FunctionalInterface
+    public interface EntryFunction<V> {
+        V apply(long key, V value);
+    }
+
+    private static final class Table<V> {
+        private final AtomicLongArray keys;
+        private final AtomicReferenceArray<V> values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.mikusch.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks with the same key one after another in submission order, while tasks with different keys run in
+ * parallel on the delegate executor.
+ * <p>
+ * Every key has a mailbox that is drained by at most one thread at a time, so state that is only ever touched by
+ * tasks of one key needs no locking. Mailboxes are removed once they run empty, so keys don't have to be bounded.
+ */
+public class KeyedSerialExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeyedSerialExecutor.class);
+    private static final int MAX_TASKS_PER_DRAIN = 64;   // give other keys a chance to run on busy delegates
+
+    private final ConcurrentLongMap<Mailbox> mailboxes = new ConcurrentLongMap<>();
+    private final Executor delegate;
+
+    public KeyedSerialExecutor(@Nonnull Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Queues a task to run after all tasks previously submitted for the same key.
+     *
+     * @param key  the key, must not be {@code 0}
+     * @param task the task
+     */
+    public void execute(long key, @Nonnull Runnable task) {
+        while (true) {
+            var mailbox = mailboxes.get(key);
+            if (mailbox == null) {
+                var created = new Mailbox(key);
+                mailbox = mailboxes.putIfAbsent(key, created);
+                if (mailbox == null) {
+                    mailbox = created;
+                }
+            }
+
+            synchronized (mailbox) {
+                if (mailbox.retired) {
+                    // removed by its last drain in the meantime, a new one has to be created
+                    continue;
+                }
+                mailbox.queue.add(task);
+            }
+            schedule(mailbox);
+            return;
+        }
+    }
+
+    private void schedule(Mailbox mailbox) {
+        if (mailbox.running.compareAndSet(false, true)) {
+            delegate.execute(() -> drain(mailbox));
+        }
+    }
+
+    private void drain(Mailbox mailbox) {
+        try {
+            for (int i = 0; i < MAX_TASKS_PER_DRAIN; i++) {
+                var task = mailbox.queue.poll();
+                if (task == null) {
+                    break;
+                }
+
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    LOG.error("Uncaught exception in serialized task", e);
+                }
+            }
+        } finally {
+            mailbox.running.set(false);
+            boolean pending;
+            synchronized (mailbox) {
+                pending = !mailbox.queue.isEmpty();
+                // tasks are only added while holding the lock, so nothing can slip into a retired mailbox
+                if (!pending && !mailbox.running.get()) {
+                    mailbox.retired = true;
+                    mailboxes.remove(mailbox.key, mailbox);
+                }
+            }
+            // tasks may have been added after our last poll
+            if (pending) {
+                schedule(mailbox);
+            }
+        }
+    }
+
+    private static final class Mailbox {
+        private final long key;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private boolean retired;    // guarded by the mailbox
+
+        private Mailbox(long key) {
+            this.key = key;
+        }
+    }
+}
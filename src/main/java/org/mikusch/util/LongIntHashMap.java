@@ -0,0 +1,139 @@
+package org.mikusch.util;
+
+import java.util.Arrays;
+
+/**
+ * Minimal open-addressing hash map from {@code long} to {@code int} that does not box.
+ * <p>
+ * Not thread-safe. Keys must not be {@code 0}. Removal uses backward shifting, so there are no tombstones and lookups
+ * stay fast no matter how many entries have been removed.
+ */
+public final class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @param missingValue the value returned by {@link #get(long)} for absent keys
+     */
+    public LongIntHashMap(int missingValue) {
+        this.missingValue = missingValue;
+        allocate(16);
+    }
+
+    private static int index(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public int get(long key) {
+        for (int i = index(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        for (int i = index(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key   the key, must not be {@code 0}
+     * @param value the value
+     * @return the previous value, or the missing value if there was none
+     */
+    public int put(long key, int value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key must not be 0");
+        }
+
+        int i = index(key, mask);
+        for (; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @param key the key
+     * @return the removed value, or the missing value if there was none
+     */
+    public int remove(long key) {
+        for (int i = index(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                shiftBack(i);
+                size--;
+                return previous;
+            }
+        }
+        return missingValue;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void shiftBack(int hole) {
+        // move entries of the same probe chain into the hole so that no tombstone is needed
+        for (int i = (hole + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = index(keys[i], mask);
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = 0;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int j = index(oldKeys[i], mask);
+                while (keys[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
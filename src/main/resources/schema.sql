@@ -0,0 +1,59 @@
+CREATE TABLE IF NOT EXISTS `autochannel_states`
+(
+    `channel_id` BIGINT  NOT NULL PRIMARY KEY,
+    `guild_id`   BIGINT  NOT NULL,
+    `owner_id`   BIGINT  NOT NULL,
+    `renamed`    BOOLEAN NOT NULL,
+    `ordinal`    INT     NOT NULL,
+    INDEX (`guild_id`)
+);
+
+CREATE TABLE IF NOT EXISTS `thinker_message_rates`
+(
+    `channel_id`        BIGINT NOT NULL PRIMARY KEY,
+    `interval_millis`   DOUBLE NOT NULL,
+    `last_message_time` BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS `thinker_scans`
+(
+    `channel_id`        BIGINT NOT NULL PRIMARY KEY,
+    `guild_id`          BIGINT NOT NULL,
+    `newest_message_id` BIGINT NOT NULL,
+    `last_message_id`   BIGINT NOT NULL,
+    `scanned`           INT    NOT NULL,
+    `saved`             INT    NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS `thinker_scanned_channels`
+(
+    `channel_id`        BIGINT NOT NULL PRIMARY KEY,
+    `newest_message_id` BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS `thought_contents`
+(
+    `message_id`      BIGINT NOT NULL PRIMARY KEY,
+    `channel_id`      BIGINT NOT NULL,
+    `content`         TEXT   NOT NULL,
+    `attachment_urls` TEXT   NOT NULL,
+    INDEX (`channel_id`)
+) DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE IF NOT EXISTS `twitter_sync`
+(
+    `user_id`  BIGINT NOT NULL PRIMARY KEY,
+    `since_id` BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS `baby_names`
+(
+    `name` VARCHAR(32) NOT NULL PRIMARY KEY
+) DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_bin;
+
+CREATE TABLE IF NOT EXISTS `command_hashes`
+(
+    `scope_id` BIGINT   NOT NULL PRIMARY KEY,
+    `hash`     CHAR(64) NOT NULL
+);